@@ -1,9 +1,9 @@
 package augmented_reality.coordinate_transformation;
 
-import android.hardware.GeomagneticField;
-import android.hardware.SensorManager;
 import android.location.Location;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import augmented_reality.kernel.AugmentedRealityKernelInterface;
 import augmented_reality.parameters.ParameterNames;
 
@@ -29,13 +29,24 @@ public class ARTransform {
     };
 
 
+    // Unique across transforms, so coordinates cached against a replaced transform are never taken as fresh.
+    private static final AtomicInteger sNextFixId = new AtomicInteger();
+
     private Location mLocation;
-    private GeomagneticField mGeomagneticField;
     private final float mWindowWidthBy2;
     private final float mWindowHeightBy2;
     private final float[] M;
+    private final float mViewConeHalfAngle;
     private final float[] mRotation = new float[9];
     private boolean mTransformOK = false;
+    private float mDeclination;
+    private float mDeclinationSine;
+    private float mDeclinationCosine;
+    private int mFixId = sNextFixId.getAndIncrement();
+    private double mFixLatitude = Double.NaN;
+    private double mFixLongitude = Double.NaN;
+    private double mFixAltitude = Double.NaN;
+    private float mFixDeclination = Float.NaN;
 
     public ARTransform(
             final int window_width,
@@ -55,41 +66,41 @@ public class ARTransform {
         M[1] *= mWindowWidthBy2 / ya;
         M[2] *= mWindowHeightBy2 / xa;
         M[3] *= mWindowHeightBy2 / ya;
+
+        final double horizontal_tangent = Math.tan(horizontal_view_angle/2.0f/180.0f*Math.PI);
+        final double vertical_tangent = Math.tan(vertical_view_angle/2.0f/180.0f*Math.PI);
+        mViewConeHalfAngle = (float) Math.atan(Math.sqrt(horizontal_tangent*horizontal_tangent + vertical_tangent*vertical_tangent));
     }
 
+    // rotation_matrix is null until the engine produces one. declination is in degrees, NaN if unknown.
     public int update(
-            final float[] gravity_vector,
-            final float[] magnetic_field_vector,
+            final float[] rotation_matrix,
+            final int sensor_status,
             final Location location,
-            final GeomagneticField geomagnetic_field
+            final float declination
     ) {
         mLocation=location;
-        mGeomagneticField = geomagnetic_field;
 
         mTransformOK =
-                gravity_vector != null &&
-                magnetic_field_vector != null &&
-                SensorManager.getRotationMatrix(mRotation,null, gravity_vector, magnetic_field_vector) &&
+                rotation_matrix != null &&
                 mLocation != null &&
-                mGeomagneticField != null;
+                !Float.isNaN(declination);
 
         if(!mTransformOK){
 
-            int status = AugmentedRealityKernelInterface.STATUS_OK_BIT;
+            int status = AugmentedRealityKernelInterface.STATUS_OK_BIT | sensor_status;
 
-            if(gravity_vector == null){
-                status |= AugmentedRealityKernelInterface.GRAVITY_SENSOR_FAILED_BIT;
-            }
-
-            if(magnetic_field_vector == null){
-                status |= AugmentedRealityKernelInterface.MAGNETIC_FIELD_SENSOR_FAILED_BIT;
+            if(rotation_matrix == null && sensor_status == 0){
+                status |=
+                        AugmentedRealityKernelInterface.GRAVITY_SENSOR_FAILED_BIT |
+                        AugmentedRealityKernelInterface.MAGNETIC_FIELD_SENSOR_FAILED_BIT;
             }
 
             if(mLocation == null){
                 status |= AugmentedRealityKernelInterface.LOCATION_SENSOR_FAILED_BIT;
             }
 
-            if(mGeomagneticField == null){
+            if(Float.isNaN(declination)){
                 status |= AugmentedRealityKernelInterface.GEOMAGNETIC_FIELD_FAILED_BIT;
             }
 
@@ -97,6 +108,9 @@ public class ARTransform {
         }
 
         else{
+            System.arraycopy(rotation_matrix, 0, mRotation, 0, 9);
+            updateLocationFix(declination);
+
             if (location.getExtras().getBoolean(ParameterNames.PRECISE_LOCATION_OK)) {
                 return AugmentedRealityKernelInterface.STATUS_OK_BIT;
             } else {
@@ -105,6 +119,91 @@ public class ARTransform {
         }
     }
 
+    // Accuracy only updates keep the fix id, so they do not invalidate the cached local coordinates.
+    private void updateLocationFix(final float declination){
+        mDeclination = declination;
+
+        if(
+                mLocation.getLatitude() != mFixLatitude ||
+                mLocation.getLongitude() != mFixLongitude ||
+                mLocation.getAltitude() != mFixAltitude ||
+                mDeclination != mFixDeclination
+        ){
+            mFixLatitude = mLocation.getLatitude();
+            mFixLongitude = mLocation.getLongitude();
+            mFixAltitude = mLocation.getAltitude();
+            mFixDeclination = mDeclination;
+            mDeclinationSine = (float) Math.sin(mDeclination * Math.PI / 180.0);
+            mDeclinationCosine = (float) Math.cos(mDeclination * Math.PI / 180.0);
+            mFixId = sNextFixId.getAndIncrement();
+        }
+    }
+
+    public int getLocationFixId(){
+        return mFixId;
+    }
+
+    // Returns false if the coordinate translation is not initialized yet.
+    public boolean updateLocalCoordinates(final Location location, final LocalCoordinates local_coordinates){
+
+        if(!mTransformOK){
+            return false;
+        }
+
+        if(local_coordinates.getFixId() != mFixId){
+            final float[] distance_and_bearing = local_coordinates.mDistanceAndBearing;
+            Location.distanceBetween(
+                    mFixLatitude,
+                    mFixLongitude,
+                    location.getLatitude(),
+                    location.getLongitude(),
+                    distance_and_bearing
+            );
+
+            final float distance_meters = distance_and_bearing[0];
+            final double bearing_from_magnetic_north_radians = (double)(distance_and_bearing[1] - mDeclination) * Math.PI / 180.0;
+            final float east = distance_meters * (float) Math.sin(bearing_from_magnetic_north_radians);
+            final float north = distance_meters * (float) Math.cos(bearing_from_magnetic_north_radians);
+            final float up = (float)(location.getAltitude() - mFixAltitude);
+
+            local_coordinates.set(east, north, up, (float) Math.sqrt(east*east + north*north + up*up), mFixId);
+        }
+
+        return true;
+    }
+
+    public ScreenCoordinates getScreenCoordinatesFromLocation(final Location location, final LocalCoordinates local_coordinates){
+
+        if(!updateLocalCoordinates(location, local_coordinates)){
+            return null;
+        }
+
+        return getScreenCoordinatesFromGlobalReferenceFrame(
+                local_coordinates.getEast(),
+                local_coordinates.getNorth(),
+                local_coordinates.getUp()
+        );
+    }
+
+    // Fills the caller owned result instead of allocating one. Returns false if the location cannot be projected.
+    public boolean getScreenCoordinatesFromLocation(
+            final Location location,
+            final LocalCoordinates local_coordinates,
+            final ScreenCoordinates screen_coordinates
+    ){
+
+        if(!updateLocalCoordinates(location, local_coordinates)){
+            return false;
+        }
+
+        return projectGlobalReferenceFrame(
+                local_coordinates.getEast(),
+                local_coordinates.getNorth(),
+                local_coordinates.getUp(),
+                screen_coordinates
+        );
+    }
+
     public ScreenCoordinates getScreenCoordinatesFromLocation(final Location location){
 
         if(!mTransformOK){
@@ -112,7 +211,7 @@ public class ARTransform {
         }
 
         final float distance_meters = mLocation.distanceTo(location);
-        final double bearing_from_magnetic_north_radians = (double)(mLocation.bearingTo(location) - mGeomagneticField.getDeclination()) * Math.PI / 180.0;
+        final double bearing_from_magnetic_north_radians = (double)(mLocation.bearingTo(location) - mDeclination) * Math.PI / 180.0;
         final float x = distance_meters * (float) Math.sin(bearing_from_magnetic_north_radians);
         final float y = distance_meters * (float) Math.cos(bearing_from_magnetic_north_radians);
         final float z = (float)(location.getAltitude() - mLocation.getAltitude());
@@ -120,13 +219,102 @@ public class ARTransform {
         return getScreenCoordinatesFromGlobalReferenceFrame(x,y,z);
     }
 
+    // Returns false if the coordinate translation is not initialized yet. Locations that cannot be projected get NaN.
+    public boolean getScreenCoordinatesFromLocations(
+            final double[] latitudes,
+            final double[] longitudes,
+            final double[] altitudes,
+            final int count,
+            final float[] x_out,
+            final float[] y_out,
+            final float[] depth_out,
+            final float[] distance_out
+    ){
+
+        if(!mTransformOK){
+            return false;
+        }
+
+        final double latitude = mLocation.getLatitude();
+        final double longitude = mLocation.getLongitude();
+        final double altitude = mLocation.getAltitude();
+        final float declination = mDeclination;
+        // Per call rather than per transform, so markers may project concurrently from the projection workers.
+        final float[] distance_and_bearing = new float[2];
+
+        for(int i=0; i<count; i++){
+            Location.distanceBetween(latitude, longitude, latitudes[i], longitudes[i], distance_and_bearing);
+
+            final float distance_meters = distance_and_bearing[0];
+            final double bearing_from_magnetic_north_radians = (double)(distance_and_bearing[1] - declination) * Math.PI / 180.0;
+            final float x = distance_meters * (float) Math.sin(bearing_from_magnetic_north_radians);
+            final float y = distance_meters * (float) Math.cos(bearing_from_magnetic_north_radians);
+            final float z = (float)(altitudes[i] - altitude);
+
+            if(!projectGlobalReferenceFrame(x, y, z, i, x_out, y_out, depth_out, distance_out)){
+                x_out[i] = Float.NaN;
+                y_out[i] = Float.NaN;
+                depth_out[i] = Float.NaN;
+                distance_out[i] = Float.NaN;
+            }
+        }
+
+        return true;
+    }
+
+    public boolean getRotationMatrix(final float[] rotation){
+
+        if(!mTransformOK){
+            return false;
+        }
+
+        System.arraycopy(mRotation, 0, rotation, 0, 9);
+
+        return true;
+    }
+
+    // Writes the direction the camera is looking at as an east/north/up unit vector (aligned to magnetic north).
+    public boolean getViewAxis(final float[] axis){
+
+        if(!mTransformOK){
+            return false;
+        }
+
+        axis[0] = -mRotation[2];
+        axis[1] = -mRotation[5];
+        axis[2] = -mRotation[8];
+
+        return true;
+    }
+
+    // Half of the diagonal view angle, in radians. Every point on the screen is within this angle of the view axis.
+    public float getViewConeHalfAngle(){
+        return mViewConeHalfAngle;
+    }
+
+    // Writes the east/north/up unit vector (aligned to magnetic north) of the given direction.
+    public boolean getDirectionVector(final float angle_from_north_towards_east, final float elevation_angle, final float[] direction){
+
+        if(!mTransformOK){
+            return false;
+        }
+
+        final double bearing_from_magnetic_north_radians = (double)(angle_from_north_towards_east - mDeclination) * Math.PI / 180.0;
+        final double elevation_cosine = Math.cos(elevation_angle * Math.PI / 180.0);
+        direction[0] = (float) (Math.sin(bearing_from_magnetic_north_radians) * elevation_cosine);
+        direction[1] = (float) (Math.cos(bearing_from_magnetic_north_radians) * elevation_cosine);
+        direction[2] = (float) Math.sin(elevation_angle * Math.PI / 180.0);
+
+        return true;
+    }
+
     public ScreenCoordinates getScreenCoordinatesFromDirection(final float angle_from_north_towards_east, final float elevation_angle){
 
         if(!mTransformOK){
             return null;
         }
 
-        final double bearing_from_magnetic_north_radians = (double)(angle_from_north_towards_east - mGeomagneticField.getDeclination()) * Math.PI / 180.0;
+        final double bearing_from_magnetic_north_radians = (double)(angle_from_north_towards_east - mDeclination) * Math.PI / 180.0;
         final double elevation_cosine = Math.cos(elevation_angle * Math.PI / 180.0);
         final float x = (float) (Math.sin(bearing_from_magnetic_north_radians) * elevation_cosine);
         final float y = (float) (Math.cos(bearing_from_magnetic_north_radians) * elevation_cosine);
@@ -135,6 +323,61 @@ public class ARTransform {
         return getScreenCoordinatesFromGlobalReferenceFrame(x,y,z);
     }
 
+    // Brings the precomputed vector up to date with the current declination.
+    public boolean updateDirectionVector(final DirectionVector direction){
+
+        if(!mTransformOK){
+            return false;
+        }
+
+        direction.update(mDeclination, mDeclinationSine, mDeclinationCosine);
+
+        return true;
+    }
+
+    // Fast path for fixed directions: no trigonometry, a single rotation of the precomputed vector.
+    public ScreenCoordinates getScreenCoordinatesFromDirection(final DirectionVector direction){
+
+        if(!updateDirectionVector(direction)){
+            return null;
+        }
+
+        return getScreenCoordinatesFromGlobalReferenceFrame(direction.getEast(), direction.getNorth(), direction.getUp());
+    }
+
+    // Fills the caller owned result instead of allocating one. Returns false if the direction cannot be projected.
+    public boolean getScreenCoordinatesFromDirection(
+            final DirectionVector direction,
+            final ScreenCoordinates screen_coordinates
+    ){
+
+        if(!updateDirectionVector(direction)){
+            return false;
+        }
+
+        return projectGlobalReferenceFrame(
+                direction.getEast(),
+                direction.getNorth(),
+                direction.getUp(),
+                screen_coordinates
+        );
+    }
+
+    // Projects an east/north/up vector (aligned to magnetic north), as written by Marker.getLocalDirection.
+    public boolean getScreenCoordinatesFromLocalDirection(
+            final float east,
+            final float north,
+            final float up,
+            final ScreenCoordinates screen_coordinates
+    ){
+
+        if(!mTransformOK){
+            return false;
+        }
+
+        return projectGlobalReferenceFrame(east, north, up, screen_coordinates);
+    }
+
     private ScreenCoordinates getScreenCoordinatesFromGlobalReferenceFrame(final float x, final float y, final float z){
         final float[] v = new float[3];
         v[0] = mRotation[0] * x + mRotation[3] * y + mRotation[6] * z;
@@ -144,6 +387,60 @@ public class ARTransform {
         return convertToScreenCoordinates(v);
     }
 
+    private boolean projectGlobalReferenceFrame(
+            final float x,
+            final float y,
+            final float z,
+            final int index,
+            final float[] x_out,
+            final float[] y_out,
+            final float[] depth_out,
+            final float[] distance_out
+    ){
+        final float v0 = mRotation[0] * x + mRotation[3] * y + mRotation[6] * z;
+        final float v1 = mRotation[1] * x + mRotation[4] * y + mRotation[7] * z;
+        final float v2 = mRotation[2] * x + mRotation[5] * y + mRotation[8] * z;
+
+        if(Math.abs(v2) < 0.03f * (Math.abs(v0) + Math.abs(v1)) ){
+            return false;
+        }
+
+        final float X = -v0 / v2;
+        final float Y = -v1 / v2;
+        x_out[index] = mWindowWidthBy2 + M[0]*X + M[1]*Y;
+        y_out[index] = mWindowHeightBy2 + M[2]*X + M[3]*Y;
+        depth_out[index] = -v2;
+        distance_out[index] = (float)Math.sqrt(v0*v0+v1*v1+v2*v2);
+
+        return true;
+    }
+
+    private boolean projectGlobalReferenceFrame(
+            final float x,
+            final float y,
+            final float z,
+            final ScreenCoordinates screen_coordinates
+    ){
+        final float v0 = mRotation[0] * x + mRotation[3] * y + mRotation[6] * z;
+        final float v1 = mRotation[1] * x + mRotation[4] * y + mRotation[7] * z;
+        final float v2 = mRotation[2] * x + mRotation[5] * y + mRotation[8] * z;
+
+        if(Math.abs(v2) < 0.03f * (Math.abs(v0) + Math.abs(v1)) ){
+            return false;
+        }
+
+        final float X = -v0 / v2;
+        final float Y = -v1 / v2;
+        screen_coordinates.set(
+                mWindowWidthBy2 + M[0]*X + M[1]*Y,
+                mWindowHeightBy2 + M[2]*X + M[3]*Y,
+                -v2,
+                (float)Math.sqrt(v0*v0+v1*v1+v2*v2)
+        );
+
+        return true;
+    }
+
     private ScreenCoordinates convertToScreenCoordinates(float[] v){
         if(Math.abs(v[2]) < 0.03f * (Math.abs(v[0]) + Math.abs(v[1])) ){
             return null;
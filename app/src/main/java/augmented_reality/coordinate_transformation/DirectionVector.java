@@ -0,0 +1,41 @@
+package augmented_reality.coordinate_transformation;
+
+// East/north/up unit vector of a fixed direction, computed once and only rotated when the declination changes.
+
+public class DirectionVector {
+    private final float mTrueEast;
+    private final float mTrueNorth;
+    private final float mUp;
+    private float mEast;
+    private float mNorth;
+    private float mDeclination = Float.NaN;
+
+    public DirectionVector(final float angle_from_north_towards_east, final float elevation_angle){
+        final double bearing_radians = angle_from_north_towards_east * Math.PI / 180.0;
+        final double elevation_radians = elevation_angle * Math.PI / 180.0;
+        final double elevation_cosine = Math.cos(elevation_radians);
+
+        mTrueEast = (float) (Math.sin(bearing_radians) * elevation_cosine);
+        mTrueNorth = (float) (Math.cos(bearing_radians) * elevation_cosine);
+        mUp = (float) Math.sin(elevation_radians);
+    }
+
+    // Rotating the bearing by -declination, given the sine and cosine of the declination.
+    void update(final float declination, final float declination_sine, final float declination_cosine){
+        if(declination != mDeclination){
+            mEast = mTrueEast * declination_cosine - mTrueNorth * declination_sine;
+            mNorth = mTrueNorth * declination_cosine + mTrueEast * declination_sine;
+            mDeclination = declination;
+        }
+    }
+
+    public float getEast(){
+        return mEast;
+    }
+    public float getNorth(){
+        return mNorth;
+    }
+    public float getUp(){
+        return mUp;
+    }
+}
@@ -0,0 +1,36 @@
+package augmented_reality.coordinate_transformation;
+
+// East/north/up offsets in meters of a location from the current fix, computed once per fix by ARTransform.
+public class LocalCoordinates {
+    private float mEast;
+    private float mNorth;
+    private float mUp;
+    private float mDistance;
+    private int mFixId = -1;
+    final float[] mDistanceAndBearing = new float[2];
+
+    void set(final float east, final float north, final float up, final float distance, final int fix_id){
+        mEast = east;
+        mNorth = north;
+        mUp = up;
+        mDistance = distance;
+        mFixId = fix_id;
+    }
+
+    int getFixId(){
+        return mFixId;
+    }
+
+    public float getEast(){
+        return mEast;
+    }
+    public float getNorth(){
+        return mNorth;
+    }
+    public float getUp(){
+        return mUp;
+    }
+    public float getDistance(){
+        return mDistance;
+    }
+}
@@ -1,10 +1,14 @@
 package augmented_reality.coordinate_transformation;
 
+// Immutable when returned by the allocating projection methods, a reusable buffer for the ones filling it.
 public class ScreenCoordinates {
-    private final float mX;
-    private final float mY;
-    private final float mDepth;
-    private final float mDistance;
+    private float mX;
+    private float mY;
+    private float mDepth;
+    private float mDistance;
+
+    public ScreenCoordinates(){
+    }
 
     public ScreenCoordinates(final float x, final float y, final float depth, final float distance){
         mX = x;
@@ -13,6 +17,13 @@ public class ScreenCoordinates {
         mDistance = distance;
     }
 
+    void set(final float x, final float y, final float depth, final float distance){
+        mX = x;
+        mY = y;
+        mDepth = depth;
+        mDistance = distance;
+    }
+
     public float getX(){
         return mX;
     }
@@ -9,6 +9,8 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.FrameLayout;
 
+import java.util.Arrays;
+
 import augmented_reality.interfaces.AugmentedRealityContainer;
 import augmented_reality.kernel.AugmentedRealityKernel;
 import augmented_reality.kernel.AugmentedRealityKernelInterface;
@@ -66,9 +68,7 @@ public abstract class AugmentedRealityFragment extends Fragment implements Augme
         mARKernel.setTimeBetweenLocationReads(mTimeBetweenLocationReads);
 
         if(markers != null){
-            for(Marker marker : markers){
-                mARKernel.addMarker(marker);
-            }
+            mARKernel.addMarkers(Arrays.asList(markers));
         }
     }
 
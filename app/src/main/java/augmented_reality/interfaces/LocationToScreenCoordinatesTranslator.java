@@ -2,11 +2,37 @@ package augmented_reality.interfaces;
 
 import android.location.Location;
 
+import augmented_reality.coordinate_transformation.DirectionVector;
+import augmented_reality.coordinate_transformation.LocalCoordinates;
 import augmented_reality.coordinate_transformation.ScreenCoordinates;
 
 public interface LocationToScreenCoordinatesTranslator {
     ScreenCoordinates getScreenCoordinatesFromLocation(Location location);
+    ScreenCoordinates getScreenCoordinatesFromLocation(Location location, LocalCoordinates local_coordinates);
+    boolean getScreenCoordinatesFromLocation(
+            Location location,
+            LocalCoordinates local_coordinates,
+            ScreenCoordinates screen_coordinates
+    );
+    boolean updateLocalCoordinates(Location location, LocalCoordinates local_coordinates);
+    int getLocationFixId();
+    void requestRender();
+    boolean getDirectionVector(float angle_from_north_towards_east, float elevation_angle, float[] direction);
+    boolean getScreenCoordinatesFromLocations(
+            double[] latitudes,
+            double[] longitudes,
+            double[] altitudes,
+            int count,
+            float[] x_out,
+            float[] y_out,
+            float[] depth_out,
+            float[] distance_out
+    );
     ScreenCoordinates getScreenCoordinatesFromDirection(float angle_from_north_towards_east, float elevation_angle);
+    ScreenCoordinates getScreenCoordinatesFromDirection(DirectionVector direction);
+    boolean getScreenCoordinatesFromDirection(DirectionVector direction, ScreenCoordinates screen_coordinates);
+    boolean updateDirectionVector(DirectionVector direction);
+    boolean getScreenCoordinatesFromLocalDirection(float east, float north, float up, ScreenCoordinates screen_coordinates);
     int getWindowWidth();
     int getWindowHeight();
 }
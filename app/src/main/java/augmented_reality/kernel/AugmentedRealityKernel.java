@@ -2,6 +2,7 @@ package augmented_reality.kernel;
 
 import android.content.Context;
 import android.graphics.PixelFormat;
+import android.hardware.SensorManager;
 import android.location.Location;
 import android.view.LayoutInflater;
 import android.view.MotionEvent;
@@ -9,6 +10,9 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.FrameLayout;
 
+import java.util.Collection;
+import java.util.Set;
+
 import augmented_reality.interfaces.AugmentedRealityContainer;
 import augmented_reality.parameters.ParameterManager;
 import augmented_reality.markers.Marker;
@@ -28,17 +32,35 @@ public class AugmentedRealityKernel implements AugmentedRealityKernelInterface {
     private float mTouchY;
     private final ParameterManager<String> mParameters = new ParameterManager<>();
     private MarkerViewEventListener mMarkerViewEventListener;
+    private final PowerGovernor mPowerGovernor;
 
     private static final float DEFAULT_GRAVITY_FILTERING_COEFFICIENT = 0.95f;
     private static final float DEFAULT_MAGNETIC_FIELD_FILTERING_COEFFICIENT = 0.95f;
+    private static final long DEFAULT_GRAVITY_FILTER_TIME_CONSTANT = 100;
+    private static final long DEFAULT_MAGNETIC_FIELD_FILTER_TIME_CONSTANT = 100;
+    private static final long DEFAULT_PREDICTION_HORIZON = 40;
+    private static final float DEFAULT_ROTATION_CHANGE_EPSILON = 0.05f;
 
     public AugmentedRealityKernel(
             AugmentedRealityContainer container,
             Context context,
             final boolean lock_camera,
             final boolean optimize_aspect_ratio
+    ){
+        this(container, context, lock_camera, optimize_aspect_ratio, RENDERER_CANVAS);
+    }
+
+    // With RENDERER_GL, markers are drawn through OpenGL ES 2.0, falling back to the canvas where it is not available.
+    // Only bitmap draws are accelerated; anything else markers draw is rasterised in software and shown above them.
+    public AugmentedRealityKernel(
+            AugmentedRealityContainer container,
+            Context context,
+            final boolean lock_camera,
+            final boolean optimize_aspect_ratio,
+            final int renderer
     ){
         mContext = context;
+        mParameters.setParameter(RENDERER, renderer);
         mLockCamera = lock_camera;
 
         FrameLayout main_frame = new FrameLayout(mContext);
@@ -62,7 +84,29 @@ public class AugmentedRealityKernel implements AugmentedRealityKernelInterface {
 
         setGravityFilteringCoefficient(DEFAULT_GRAVITY_FILTERING_COEFFICIENT);
         setMagneticFieldFilteringCoefficient(DEFAULT_MAGNETIC_FIELD_FILTERING_COEFFICIENT);
+        setFilterMode(FILTER_MODE_COEFFICIENT);
+        setGravityFilterTimeConstant(DEFAULT_GRAVITY_FILTER_TIME_CONSTANT);
+        setMagneticFieldFilterTimeConstant(DEFAULT_MAGNETIC_FIELD_FILTER_TIME_CONSTANT);
+        setOrientationMode(ORIENTATION_ACCELEROMETER_MAGNETOMETER);
+        setPredictionEnabled(false);
+        setPredictionHorizon(DEFAULT_PREDICTION_HORIZON);
+        setSensorSamplingPeriod(SensorManager.SENSOR_DELAY_FASTEST);
+        setSensorMaxReportLatency(SENSOR_REPORT_LATENCY_AUTO);
         setSleepTimeBetweenFrames(0);
+        setFrameSchedulerMode(FRAME_SCHEDULER_SLEEP);
+        setTargetFrameRate(0.0f);
+        setFrameSkippingEnabled(true);
+        setRotationChangeEpsilon(DEFAULT_ROTATION_CHANGE_EPSILON);
+        setMaxMarkerDistance(Float.POSITIVE_INFINITY);
+        setParallelProjectionThreshold(0);
+        setDeclutterMode(DECLUTTER_NONE);
+        setClusteringDistance(0.0f);
+        setClusterCellAngle(5.0f);
+
+        mParameters.setParameter(MAX_PREVIEW_PIXELS, 0);
+        mParameters.setParameter(DEVICE_STATIONARY, false);
+        mParameters.setParameter(MOTION_DETECTION_ENABLED, false);
+        mPowerGovernor = new PowerGovernor(mContext, mParameters);
 
         mParameters.setParameter(ASPECT_RATIO_OPTIMIZATION_WEIGHT, optimize_aspect_ratio ? 1.0f : 0.0f);
     }
@@ -88,10 +132,12 @@ public class AugmentedRealityKernel implements AugmentedRealityKernelInterface {
 
     public void pause(){
         mARCameraSurface.stopCamera(mLockCamera);
+        mPowerGovernor.pause();
     }
 
     public void resume(){
         mARCameraSurface.restartCamera();
+        mPowerGovernor.resume();
     }
 
     public Context getContext(){
@@ -108,6 +154,26 @@ public class AugmentedRealityKernel implements AugmentedRealityKernelInterface {
         return mARMarkersSurface.removeMarker(marker);
     }
 
+    @Override
+    public void addMarkers(final Collection<? extends Marker> markers){
+        mARMarkersSurface.addMarkers(markers);
+    }
+
+    @Override
+    public int removeMarkers(final Collection<? extends Marker> markers){
+        return mARMarkersSurface.removeMarkers(markers);
+    }
+
+    @Override
+    public int removeMarkersById(final Set<String> ids){
+        return mARMarkersSurface.removeMarkersById(ids);
+    }
+
+    @Override
+    public void replaceAllMarkers(final Collection<? extends Marker> markers){
+        mARMarkersSurface.replaceAllMarkers(markers);
+    }
+
     @Override
     public Marker findFirstMarkerById(final String id) {
         return mARMarkersSurface.findFirstMarkerById(id);
@@ -128,6 +194,11 @@ public class AugmentedRealityKernel implements AugmentedRealityKernelInterface {
         return mARMarkersSurface.getMarkerAtPosition(pos);
     }
 
+    @Override
+    public void requestRender() {
+        mARMarkersSurface.requestRender();
+    }
+
     @Override
     public void setMarkerViewEventListener(final MarkerViewEventListener listener){
         mMarkerViewEventListener = listener;
@@ -168,6 +239,86 @@ public class AugmentedRealityKernel implements AugmentedRealityKernelInterface {
         return (Float) mParameters.getParameter(MAGNETIC_FIELD_FILTER_COEFFICIENT);
     }
 
+    @Override
+    public void setFilterMode(final int mode){
+        mParameters.setParameter(FILTER_MODE, mode);
+    }
+
+    @Override
+    public int getFilterMode(){
+        return (Integer) mParameters.getParameter(FILTER_MODE);
+    }
+
+    @Override
+    public void setGravityFilterTimeConstant(final long time){
+        mParameters.setParameter(GRAVITY_FILTER_TIME_CONSTANT, time);
+    }
+
+    @Override
+    public long getGravityFilterTimeConstant(){
+        return (Long) mParameters.getParameter(GRAVITY_FILTER_TIME_CONSTANT);
+    }
+
+    @Override
+    public void setMagneticFieldFilterTimeConstant(final long time){
+        mParameters.setParameter(MAGNETIC_FIELD_FILTER_TIME_CONSTANT, time);
+    }
+
+    @Override
+    public long getMagneticFieldFilterTimeConstant(){
+        return (Long) mParameters.getParameter(MAGNETIC_FIELD_FILTER_TIME_CONSTANT);
+    }
+
+    @Override
+    public void setOrientationMode(final int mode){
+        mParameters.setParameter(ORIENTATION_MODE, mode);
+    }
+
+    @Override
+    public int getOrientationMode(){
+        return (Integer) mParameters.getParameter(ORIENTATION_MODE);
+    }
+
+    @Override
+    public void setPredictionEnabled(final boolean enabled){
+        mParameters.setParameter(PREDICTION_ENABLED, enabled);
+    }
+
+    @Override
+    public boolean isPredictionEnabled(){
+        return (Boolean) mParameters.getParameter(PREDICTION_ENABLED);
+    }
+
+    @Override
+    public void setPredictionHorizon(final long time){
+        mParameters.setParameter(PREDICTION_HORIZON, time);
+    }
+
+    @Override
+    public long getPredictionHorizon(){
+        return (Long) mParameters.getParameter(PREDICTION_HORIZON);
+    }
+
+    @Override
+    public void setSensorSamplingPeriod(final int period){
+        mParameters.setParameter(SENSOR_SAMPLING_PERIOD, period);
+    }
+
+    @Override
+    public int getSensorSamplingPeriod(){
+        return (Integer) mParameters.getParameter(SENSOR_SAMPLING_PERIOD);
+    }
+
+    @Override
+    public void setSensorMaxReportLatency(final int latency){
+        mParameters.setParameter(SENSOR_MAX_REPORT_LATENCY, latency);
+    }
+
+    @Override
+    public int getSensorMaxReportLatency(){
+        return (Integer) mParameters.getParameter(SENSOR_MAX_REPORT_LATENCY);
+    }
+
     @Override
     public void setSleepTimeBetweenFrames(final long time){
         mParameters.setParameter(SLEEP_TIME_BETWEEN_FRAMES, time);
@@ -178,6 +329,46 @@ public class AugmentedRealityKernel implements AugmentedRealityKernelInterface {
         return (Long) mParameters.getParameter(SLEEP_TIME_BETWEEN_FRAMES);
     }
 
+    @Override
+    public void setFrameSchedulerMode(final int mode){
+        mParameters.setParameter(FRAME_SCHEDULER_MODE, mode);
+    }
+
+    @Override
+    public int getFrameSchedulerMode(){
+        return (Integer) mParameters.getParameter(FRAME_SCHEDULER_MODE);
+    }
+
+    @Override
+    public void setTargetFrameRate(final float frames_per_second){
+        mParameters.setParameter(TARGET_FRAME_RATE, frames_per_second);
+    }
+
+    @Override
+    public float getTargetFrameRate(){
+        return (Float) mParameters.getParameter(TARGET_FRAME_RATE);
+    }
+
+    @Override
+    public void setFrameSkippingEnabled(final boolean enabled){
+        mParameters.setParameter(FRAME_SKIPPING_ENABLED, enabled);
+    }
+
+    @Override
+    public boolean isFrameSkippingEnabled(){
+        return (Boolean) mParameters.getParameter(FRAME_SKIPPING_ENABLED);
+    }
+
+    @Override
+    public void setRotationChangeEpsilon(final float degrees){
+        mParameters.setParameter(ROTATION_CHANGE_EPSILON, degrees);
+    }
+
+    @Override
+    public float getRotationChangeEpsilon(){
+        return (Float) mParameters.getParameter(ROTATION_CHANGE_EPSILON);
+    }
+
     @Override
     public void setTimeBetweenLocationReads(final long time){
         mParameters.setParameter(TIME_BETWEEN_LOCATION_READS, time);
@@ -188,6 +379,81 @@ public class AugmentedRealityKernel implements AugmentedRealityKernelInterface {
         return (Long) mParameters.getParameter(TIME_BETWEEN_LOCATION_READS);
     }
 
+    @Override
+    public void setMaxMarkerDistance(final float distance){
+        mParameters.setParameter(MAX_MARKER_DISTANCE, distance);
+    }
+
+    @Override
+    public float getMaxMarkerDistance(){
+        return (Float) mParameters.getParameter(MAX_MARKER_DISTANCE);
+    }
+
+    @Override
+    public void setParallelProjectionThreshold(final int markers){
+        mParameters.setParameter(PARALLEL_PROJECTION_THRESHOLD, markers);
+    }
+
+    @Override
+    public int getParallelProjectionThreshold(){
+        return (Integer) mParameters.getParameter(PARALLEL_PROJECTION_THRESHOLD);
+    }
+
+    @Override
+    public void setDeclutterMode(final int mode){
+        mParameters.setParameter(DECLUTTER_MODE, mode);
+    }
+
+    @Override
+    public int getDeclutterMode(){
+        return (Integer) mParameters.getParameter(DECLUTTER_MODE);
+    }
+
+    @Override
+    public void setClusteringDistance(final float distance){
+        mParameters.setParameter(CLUSTERING_DISTANCE, distance);
+    }
+
+    @Override
+    public float getClusteringDistance(){
+        return (Float) mParameters.getParameter(CLUSTERING_DISTANCE);
+    }
+
+    @Override
+    public void setClusterCellAngle(final float angle){
+        mParameters.setParameter(CLUSTER_CELL_ANGLE, angle);
+    }
+
+    @Override
+    public float getClusterCellAngle(){
+        return (Float) mParameters.getParameter(CLUSTER_CELL_ANGLE);
+    }
+
+    @Override
+    public int getRenderer(){
+        return (Integer) mParameters.getParameter(RENDERER);
+    }
+
+    @Override
+    public CullingStatistics getCullingStatistics(){
+        return mARMarkersSurface.getCullingStatistics();
+    }
+
+    @Override
+    public void setPowerGovernorEnabled(final boolean enabled){
+        mPowerGovernor.setEnabled(enabled);
+    }
+
+    @Override
+    public boolean isPowerGovernorEnabled(){
+        return mPowerGovernor.isEnabled();
+    }
+
+    @Override
+    public int getPowerProfile(){
+        return mPowerGovernor.getProfile();
+    }
+
     private void handleClickEvent(){
         if(mMarkerViewEventListener != null){
             final Marker marker = mARMarkersSurface.getTouchedMarker(mTouchX,mTouchY);
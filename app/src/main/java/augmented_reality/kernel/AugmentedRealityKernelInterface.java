@@ -6,6 +6,31 @@ import augmented_reality.markers.MarkerManagerInterface;
 
 public interface AugmentedRealityKernelInterface extends MarkerManagerInterface, ARStatusInterface {
 
+    int FRAME_SCHEDULER_SLEEP = 0;
+    int FRAME_SCHEDULER_VSYNC = 1;
+
+    int ORIENTATION_ACCELEROMETER_MAGNETOMETER = 0;
+    int ORIENTATION_COMPLEMENTARY_FILTER = 1;
+    int ORIENTATION_ROTATION_VECTOR = 2;
+
+    int FILTER_MODE_COEFFICIENT = 0;
+    int FILTER_MODE_TIME_CONSTANT = 1;
+
+    int SENSOR_REPORT_LATENCY_AUTO = -1;
+
+    int POWER_PROFILE_MANUAL = -1;
+    int POWER_PROFILE_HIGH = 0;
+    int POWER_PROFILE_BALANCED = 1;
+    int POWER_PROFILE_SAVER = 2;
+
+    int DECLUTTER_NONE = 0;
+    int DECLUTTER_HIDE = 1;
+    int DECLUTTER_STACK = 2;
+    int DECLUTTER_AGGREGATE = 3;
+
+    int RENDERER_CANVAS = 0;
+    int RENDERER_GL = 1;
+
     interface MarkerViewEventListener{
         void onClick(Marker marker);
     }
@@ -15,8 +40,48 @@ public interface AugmentedRealityKernelInterface extends MarkerManagerInterface,
     float getGravityFilteringCoefficient();
     void setMagneticFieldFilteringCoefficient(final float coefficient);
     float getMagneticFieldFilteringCoefficient();
+    void setFilterMode(final int mode);
+    int getFilterMode();
+    void setGravityFilterTimeConstant(final long time);
+    long getGravityFilterTimeConstant();
+    void setMagneticFieldFilterTimeConstant(final long time);
+    long getMagneticFieldFilterTimeConstant();
+    void setOrientationMode(final int mode);
+    int getOrientationMode();
+    void setPredictionEnabled(final boolean enabled);
+    boolean isPredictionEnabled();
+    void setPredictionHorizon(final long time);
+    long getPredictionHorizon();
+    void setSensorSamplingPeriod(final int period);
+    int getSensorSamplingPeriod();
+    void setSensorMaxReportLatency(final int latency);
+    int getSensorMaxReportLatency();
     void setSleepTimeBetweenFrames(final long time);
     long getSleepTimeBetweenFrames();
+    void setFrameSchedulerMode(final int mode);
+    int getFrameSchedulerMode();
+    void setTargetFrameRate(final float frames_per_second);
+    float getTargetFrameRate();
+    // Enabled by default; markers that change on their own must call Marker.invalidate() to be redrawn.
+    void setFrameSkippingEnabled(final boolean enabled);
+    boolean isFrameSkippingEnabled();
+    void setRotationChangeEpsilon(final float degrees);
+    float getRotationChangeEpsilon();
     void setTimeBetweenLocationReads(final long time);
     long getTimeBetweenLocationReads();
+    void setMaxMarkerDistance(final float distance);
+    float getMaxMarkerDistance();
+    void setParallelProjectionThreshold(final int markers);
+    int getParallelProjectionThreshold();
+    void setDeclutterMode(final int mode);
+    int getDeclutterMode();
+    void setClusteringDistance(final float distance);
+    float getClusteringDistance();
+    void setClusterCellAngle(final float angle);
+    float getClusterCellAngle();
+    int getRenderer();
+    CullingStatistics getCullingStatistics();
+    void setPowerGovernorEnabled(final boolean enabled);
+    boolean isPowerGovernorEnabled();
+    int getPowerProfile();
 }
@@ -0,0 +1,40 @@
+package augmented_reality.kernel;
+
+// Snapshot of the culling counters of the render thread, see AugmentedRealityKernelInterface.getCullingStatistics.
+public class CullingStatistics {
+    private final long mFrame;
+    private final int mTotal;
+    private final int mVisited;
+    private final int mVisible;
+    private final int mDrawn;
+
+    public CullingStatistics(final long frame, final int total, final int visited, final int visible, final int drawn){
+        mFrame = frame;
+        mTotal = total;
+        mVisited = visited;
+        mVisible = visible;
+        mDrawn = drawn;
+    }
+
+    public long getFrame(){
+        return mFrame;
+    }
+
+    public int getTotal(){
+        return mTotal;
+    }
+
+    // Number of markers examined by the spatial index in the last frame.
+    public int getVisited(){
+        return mVisited;
+    }
+
+    // Markers or clusters left by culling, before projection and decluttering.
+    public int getVisible(){
+        return mVisible;
+    }
+
+    public int getDrawn(){
+        return mDrawn;
+    }
+}
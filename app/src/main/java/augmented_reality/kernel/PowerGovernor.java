@@ -0,0 +1,242 @@
+package augmented_reality.kernel;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.hardware.SensorManager;
+import android.os.BatteryManager;
+import android.os.Handler;
+
+import augmented_reality.parameters.ParameterManager;
+
+import static augmented_reality.parameters.ParameterNames.*;
+
+// Switches power profiles on motion, battery level and temperature, on the main thread. The preview size ignores motion.
+class PowerGovernor {
+
+    private static class Profile {
+        final int mSensorSamplingPeriod;
+        final float mTargetFrameRate;
+        final long mTimeBetweenLocationReads;
+        final int mMaxPreviewPixels;
+
+        Profile(
+                final int sensor_sampling_period,
+                final float target_frame_rate,
+                final long time_between_location_reads,
+                final int max_preview_pixels
+        ){
+            mSensorSamplingPeriod = sensor_sampling_period;
+            mTargetFrameRate = target_frame_rate;
+            mTimeBetweenLocationReads = time_between_location_reads;
+            mMaxPreviewPixels = max_preview_pixels;
+        }
+    }
+
+    // Indexed by the POWER_PROFILE constants of AugmentedRealityKernelInterface.
+    private static final Profile[] PROFILES = {
+            new Profile(SensorManager.SENSOR_DELAY_FASTEST, 60.0f, 1000, 0),
+            new Profile(SensorManager.SENSOR_DELAY_GAME, 30.0f, 5000, 1280 * 720),
+            new Profile(SensorManager.SENSOR_DELAY_UI, 15.0f, 20000, 640 * 480)
+    };
+
+    private static final int LOW_BATTERY_LEVEL = 30;
+    private static final int CRITICAL_BATTERY_LEVEL = 15;
+
+    // Battery temperatures in tenths of degree Celsius, with some hysteresis so the profile does not flap.
+    private static final int WARM_TEMPERATURE = 400;
+    private static final int HOT_TEMPERATURE = 450;
+    private static final int TEMPERATURE_HYSTERESIS = 20;
+
+    private final Context mContext;
+    private final ParameterManager<String> mParameters;
+    private boolean mEnabled = false;
+    private boolean mPaused = false;
+    private volatile int mProfile = AugmentedRealityKernelInterface.POWER_PROFILE_MANUAL;
+    private int mPreviewProfile = AugmentedRealityKernelInterface.POWER_PROFILE_MANUAL;
+    private Object mStationaryCallbackID;
+    private boolean mStationary = false;
+    private int mBatteryLevel = 100;
+    private boolean mCharging = false;
+    private int mThermalProfile = AugmentedRealityKernelInterface.POWER_PROFILE_HIGH;
+    private Profile mSavedSettings;
+
+    private final BroadcastReceiver mBatteryReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            final int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+            final int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+            final int status = intent.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
+            final int temperature = intent.getIntExtra(BatteryManager.EXTRA_TEMPERATURE, Integer.MIN_VALUE);
+
+            if (level >= 0 && scale > 0) {
+                mBatteryLevel = level * 100 / scale;
+            }
+            mCharging =
+                    status == BatteryManager.BATTERY_STATUS_CHARGING ||
+                    status == BatteryManager.BATTERY_STATUS_FULL;
+            if (temperature != Integer.MIN_VALUE) {
+                updateThermalProfile(temperature);
+            }
+
+            applyProfile();
+        }
+    };
+
+    PowerGovernor(final Context context, final ParameterManager<String> parameters){
+        mContext = context.getApplicationContext();
+        mParameters = parameters;
+    }
+
+    int getProfile(){
+        return mProfile;
+    }
+
+    boolean isEnabled(){
+        return mEnabled;
+    }
+
+    void setEnabled(final boolean enabled){
+        if (enabled == mEnabled) {
+            return;
+        }
+        mEnabled = enabled;
+
+        if (enabled) {
+            mSavedSettings =
+                    new Profile(
+                            (Integer) mParameters.getParameter(SENSOR_SAMPLING_PERIOD),
+                            (Float) mParameters.getParameter(TARGET_FRAME_RATE),
+                            (Long) mParameters.getParameter(TIME_BETWEEN_LOCATION_READS),
+                            (Integer) mParameters.getParameter(MAX_PREVIEW_PIXELS)
+                    );
+            mParameters.setParameter(MOTION_DETECTION_ENABLED, true);
+            if (!mPaused) {
+                startListening();
+            }
+        } else {
+            if (!mPaused) {
+                stopListening();
+            }
+            mParameters.setParameter(MOTION_DETECTION_ENABLED, false);
+            mProfile = AugmentedRealityKernelInterface.POWER_PROFILE_MANUAL;
+            mPreviewProfile = AugmentedRealityKernelInterface.POWER_PROFILE_MANUAL;
+            apply(mSavedSettings, mSavedSettings.mMaxPreviewPixels);
+            mSavedSettings = null;
+        }
+    }
+
+    void pause(){
+        if (!mPaused) {
+            mPaused = true;
+            if (mEnabled) {
+                stopListening();
+            }
+        }
+    }
+
+    void resume(){
+        if (mPaused) {
+            mPaused = false;
+            if (mEnabled) {
+                startListening();
+            }
+        }
+    }
+
+    private void startListening(){
+        mStationary = (Boolean) mParameters.getParameter(DEVICE_STATIONARY);
+        mStationaryCallbackID =
+                mParameters.registerCallback(
+                        DEVICE_STATIONARY,
+                        new ParameterManager.DataChangedCallback<String>() {
+                            @Override
+                            public void onDataChanged(String key, Object data, Object old_data) {
+                                if (mStationaryCallbackID != null) {
+                                    mStationary = (Boolean) data;
+                                    applyProfile();
+                                }
+                            }
+                        },
+                        new Handler(mContext.getMainLooper())
+                );
+
+        // The battery broadcast is sticky, so the receiver is called right away with the current state.
+        mContext.registerReceiver(mBatteryReceiver, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        applyProfile();
+    }
+
+    private void stopListening(){
+        mContext.unregisterReceiver(mBatteryReceiver);
+        mParameters.removeCallback(DEVICE_STATIONARY, mStationaryCallbackID);
+        mStationaryCallbackID = null;
+    }
+
+    private void updateThermalProfile(final int temperature){
+        switch (mThermalProfile) {
+            case AugmentedRealityKernelInterface.POWER_PROFILE_SAVER:
+                if (temperature < HOT_TEMPERATURE - TEMPERATURE_HYSTERESIS) {
+                    mThermalProfile = AugmentedRealityKernelInterface.POWER_PROFILE_BALANCED;
+                }
+                break;
+            case AugmentedRealityKernelInterface.POWER_PROFILE_BALANCED:
+                if (temperature >= HOT_TEMPERATURE) {
+                    mThermalProfile = AugmentedRealityKernelInterface.POWER_PROFILE_SAVER;
+                } else if (temperature < WARM_TEMPERATURE - TEMPERATURE_HYSTERESIS) {
+                    mThermalProfile = AugmentedRealityKernelInterface.POWER_PROFILE_HIGH;
+                }
+                break;
+            default:
+                if (temperature >= HOT_TEMPERATURE) {
+                    mThermalProfile = AugmentedRealityKernelInterface.POWER_PROFILE_SAVER;
+                } else if (temperature >= WARM_TEMPERATURE) {
+                    mThermalProfile = AugmentedRealityKernelInterface.POWER_PROFILE_BALANCED;
+                }
+                break;
+        }
+    }
+
+    // The most economical profile requested by any of the inputs wins.
+    private void applyProfile(){
+        if (!mEnabled || mPaused) {
+            return;
+        }
+
+        int profile = mThermalProfile;
+
+        if (!mCharging) {
+            if (mBatteryLevel <= CRITICAL_BATTERY_LEVEL) {
+                profile = Math.max(profile, AugmentedRealityKernelInterface.POWER_PROFILE_SAVER);
+            } else if (mBatteryLevel <= LOW_BATTERY_LEVEL) {
+                profile = Math.max(profile, AugmentedRealityKernelInterface.POWER_PROFILE_BALANCED);
+            }
+        }
+
+        final int preview_profile = profile;
+
+        if (mStationary) {
+            profile = Math.max(profile, AugmentedRealityKernelInterface.POWER_PROFILE_BALANCED);
+        }
+
+        if (profile != mProfile || preview_profile != mPreviewProfile) {
+            mProfile = profile;
+            mPreviewProfile = preview_profile;
+            apply(PROFILES[profile], PROFILES[preview_profile].mMaxPreviewPixels);
+        }
+    }
+
+    private void apply(final Profile profile, final int max_preview_pixels){
+        setChangedParameter(SENSOR_SAMPLING_PERIOD, profile.mSensorSamplingPeriod);
+        setChangedParameter(TARGET_FRAME_RATE, profile.mTargetFrameRate);
+        setChangedParameter(TIME_BETWEEN_LOCATION_READS, profile.mTimeBetweenLocationReads);
+        setChangedParameter(MAX_PREVIEW_PIXELS, max_preview_pixels);
+    }
+
+    // Callbacks fire on every set, and some of them restart the sensors or the camera.
+    private void setChangedParameter(final String key, final Object value){
+        if (!value.equals(mParameters.getParameter(key))) {
+            mParameters.setParameter(key, value);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package augmented_reality.markers;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.RectF;
+
+import augmented_reality.coordinate_transformation.ScreenCoordinates;
+
+// Far away markers in about the same direction, drawn as a disc with their count. Created when clustering is enabled.
+public class ClusterMarker extends Marker {
+
+    private static final int FILL_COLOR = 0xCC1976D2;
+    private static final float BASE_RADIUS = 20.0f;
+    private static final float RADIUS_PER_DOUBLING = 4.0f;
+    private static final float TEXT_SIZE = 24.0f;
+
+    private final Marker[] mMarkers;
+    private final int mPriority;
+    private final String mLabel;
+    private final float mRadius;
+    private final Paint mFillPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final float[] mDirection = new float[4];
+    private boolean mDirectionOK = false;
+    private final ScreenCoordinates mLastScreenCoordinate = new ScreenCoordinates();
+    private boolean mLastScreenCoordinateOK = false;
+
+    public ClusterMarker(final String id, final Marker[] markers){
+        super(id);
+        mMarkers = markers;
+
+        int priority = Integer.MIN_VALUE;
+        for(final Marker marker : markers){
+            priority = Math.max(priority, marker.getPriority());
+        }
+        mPriority = priority;
+
+        mLabel = String.valueOf(markers.length);
+        mRadius = BASE_RADIUS + RADIUS_PER_DOUBLING * (float) (Math.log(markers.length) / Math.log(2.0));
+
+        mFillPaint.setColor(FILL_COLOR);
+        mTextPaint.setColor(Color.WHITE);
+        mTextPaint.setTextSize(TEXT_SIZE);
+        mTextPaint.setTextAlign(Paint.Align.CENTER);
+    }
+
+    // The returned array must not be modified.
+    public Marker[] getMarkers(){
+        return mMarkers;
+    }
+
+    public int getCount(){
+        return mMarkers.length;
+    }
+
+    @Override
+    public int getPriority(){
+        return mPriority;
+    }
+
+    // Mean direction of the markers and distance of the closest one.
+    @Override
+    public synchronized boolean getLocalDirection(final float[] direction){
+        float east = 0.0f;
+        float north = 0.0f;
+        float up = 0.0f;
+        float distance = Float.MAX_VALUE;
+
+        for(final Marker marker : mMarkers){
+            if(marker.getLocalDirection(direction)){
+                east += direction[0];
+                north += direction[1];
+                up += direction[2];
+                distance = Math.min(distance, direction[3]);
+            }
+        }
+
+        final float norm = (float) Math.sqrt(east*east + north*north + up*up);
+        mDirectionOK = norm > 0.0f;
+
+        if(!mDirectionOK){
+            return false;
+        }
+
+        mDirection[0] = east / norm;
+        mDirection[1] = north / norm;
+        mDirection[2] = up / norm;
+        mDirection[3] = distance;
+        System.arraycopy(mDirection, 0, direction, 0, 4);
+
+        return true;
+    }
+
+    @Override
+    public final synchronized boolean onProject(final RectF bounds){
+
+        mLastScreenCoordinateOK =
+                mDirectionOK &&
+                getScreenCoordinatesFromLocalDirection(mDirection[0], mDirection[1], mDirection[2], mLastScreenCoordinate) &&
+                mLastScreenCoordinate.getDepth() > 0.0f;
+
+        if(!mLastScreenCoordinateOK){
+            return false;
+        }
+
+        bounds.set(
+                mLastScreenCoordinate.getX() - mRadius,
+                mLastScreenCoordinate.getY() - mRadius,
+                mLastScreenCoordinate.getX() + mRadius,
+                mLastScreenCoordinate.getY() + mRadius
+        );
+
+        return true;
+    }
+
+    @Override
+    public final synchronized void onDraw(final Canvas canvas){
+
+        if(mLastScreenCoordinateOK){
+            final float x = mLastScreenCoordinate.getX();
+            final float y = mLastScreenCoordinate.getY();
+
+            canvas.drawCircle(x, y, mRadius, mFillPaint);
+            canvas.drawText(mLabel, x, y - 0.5f * (mTextPaint.ascent() + mTextPaint.descent()), mTextPaint);
+        }
+    }
+
+    @Override
+    public synchronized boolean touched(final float x, final float y){
+
+        if(mLastScreenCoordinateOK){
+            final float dx = x - mLastScreenCoordinate.getX();
+            final float dy = y - mLastScreenCoordinate.getY();
+
+            return dx*dx + dy*dy <= mRadius*mRadius;
+        }
+        else {
+            return false;
+        }
+    }
+
+    @Override
+    public synchronized void onHidden(){
+        mLastScreenCoordinateOK = false;
+    }
+}
@@ -1,13 +1,18 @@
 package augmented_reality.markers;
 
 import android.graphics.Canvas;
+import android.graphics.RectF;
 import android.location.Location;
 
 import augmented_reality.interfaces.LocationToScreenCoordinatesTranslator;
+import augmented_reality.coordinate_transformation.DirectionVector;
+import augmented_reality.coordinate_transformation.LocalCoordinates;
 import augmented_reality.coordinate_transformation.ScreenCoordinates;
 
-//Your marker will be accessed by more than one thread through the "onDraw" and the "touched" methods,
-//so remember to serialize accesses to mutable fields of tour markers using the synchronized statement.
+//The render thread calls "onProject" on every visible marker, then "onDraw" on the ones that returned true. Only markers
+//reporting empty bounds get "touched" called, from the UI thread, so synchronize the fields it shares with onDraw.
+//Frame skipping is on by default in every scheduler mode: a marker whose appearance changes on its own (animations,
+//updated data) must call "invalidate", or it is only redrawn when the device moves or the marker set changes.
 
 public abstract class Marker{
     private final String id;
@@ -22,11 +27,80 @@ public abstract class Marker{
         return translator.getScreenCoordinatesFromLocation(location);
     }
 
+    // Same as above, caching the offsets of the location in local_coordinates until the next location fix.
+
+    protected ScreenCoordinates getScreenCoordinatesFromLocation(final Location location, final LocalCoordinates local_coordinates){
+        return translator.getScreenCoordinatesFromLocation(location, local_coordinates);
+    }
+
+    // Same as above, filling screen_coordinates instead. Returns false if the location cannot be projected.
+
+    protected boolean getScreenCoordinatesFromLocation(
+            final Location location,
+            final LocalCoordinates local_coordinates,
+            final ScreenCoordinates screen_coordinates
+    ){
+        return translator.getScreenCoordinatesFromLocation(location, local_coordinates, screen_coordinates);
+    }
+
+    // Returns false if the coordinate translation is not initialized yet.
+    protected boolean updateLocalCoordinates(final Location location, final LocalCoordinates local_coordinates){
+        return translator.updateLocalCoordinates(location, local_coordinates);
+    }
+
+    // Returns false if the coordinate translation is not initialized yet. Locations far outside the screen get NaN.
+
+    protected boolean getScreenCoordinatesFromLocations(
+            final double[] latitudes,
+            final double[] longitudes,
+            final double[] altitudes,
+            final int count,
+            final float[] x_out,
+            final float[] y_out,
+            final float[] depth_out,
+            final float[] distance_out
+    ){
+        return translator.getScreenCoordinatesFromLocations(latitudes,longitudes,altitudes,count,x_out,y_out,depth_out,distance_out);
+    }
+
     // May return null if the coordinate translation is not initialized yet or the produced screen coordinates are far outside the screen.
     protected ScreenCoordinates getScreenCoordinatesFromDirection(final float angle_from_north_towards_east, final float elevation_angle){
         return translator.getScreenCoordinatesFromDirection(angle_from_north_towards_east,elevation_angle);
     }
 
+    // Same as above for a precomputed direction, without any trigonometry.
+    protected ScreenCoordinates getScreenCoordinatesFromDirection(final DirectionVector direction){
+        return translator.getScreenCoordinatesFromDirection(direction);
+    }
+
+    // Same as above, filling screen_coordinates instead of allocating a result.
+    protected boolean getScreenCoordinatesFromDirection(
+            final DirectionVector direction,
+            final ScreenCoordinates screen_coordinates
+    ){
+        return translator.getScreenCoordinatesFromDirection(direction, screen_coordinates);
+    }
+
+    // Projects an east/north/up vector (aligned to magnetic north), like the ones written by getLocalDirection.
+    protected boolean getScreenCoordinatesFromLocalDirection(
+            final float east,
+            final float north,
+            final float up,
+            final ScreenCoordinates screen_coordinates
+    ){
+        return translator.getScreenCoordinatesFromLocalDirection(east, north, up, screen_coordinates);
+    }
+
+    // Returns false if the coordinate translation is not initialized yet.
+    protected boolean updateDirectionVector(final DirectionVector direction){
+        return translator.updateDirectionVector(direction);
+    }
+
+    // Returns false if the coordinate translation is not initialized yet.
+    protected boolean getDirectionVector(final float angle_from_north_towards_east, final float elevation_angle, final float[] direction){
+        return translator.getDirectionVector(angle_from_north_towards_east, elevation_angle, direction);
+    }
+
     protected int getWindowWidth(){
         return translator.getWindowWidth();
     }
@@ -35,10 +109,49 @@ public abstract class Marker{
         return translator.getWindowHeight();
     }
 
+    // Called before onDraw, possibly on a projection worker. Writes the bounds used for hit testing, empty by default to
+    // fall back to touched(). Returns false if the marker is not on screen.
+    public boolean onProject(final RectF bounds){
+        return true;
+    }
+
+    // When decluttering, the higher priority marker of an overlapping pair is kept in place, the last drawn on ties.
+    public int getPriority(){
+        return 0;
+    }
+
+    // Markers are drawn grouped by this key (see MarkerImage.getBatchKey) wherever it does not change which is on top.
+    public int getBatchKey(){
+        return 0;
+    }
+
     public abstract void onDraw(final Canvas canvas);
 
     public abstract boolean touched(float x, float y);
 
+    // Used for culling: the unit east/north/up vector towards the marker in direction[0..2], its distance in meters
+    // (0 for pure directions) in direction[3]. Markers returning false, the default, are never culled.
+    public boolean getLocalDirection(final float[] direction){
+        return false;
+    }
+
+    // Call after changing what onDraw draws, from any thread.
+    public void invalidate(){
+        if(translator != null){
+            translator.requestRender();
+        }
+    }
+
+    // Called by the render thread when the marker was culled.
+
+    public void onHidden(){
+    }
+
+    // Called from the thread removing the marker from the kernel, to release what it holds like image references.
+
+    public void onRemoved(){
+    }
+
     public Marker(final String id){
         this.id = id == null ? "" : id;
     }
@@ -0,0 +1,65 @@
+package augmented_reality.markers;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+
+// A sub-rectangle of a MarkerImageAtlas page. Draws nothing until the atlas is built.
+class MarkerAtlasImage extends MarkerImage {
+
+    private final float mWidth;
+    private final float mHeight;
+    private final Paint mPaint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
+    private final RectF mDestination = new RectF();
+    private volatile Bitmap mPage;
+    private volatile int mPageId;
+
+    // Set by the builder.
+    final Rect mSource = new Rect();
+    Bitmap mBitmapSource;
+    Drawable mDrawableSource;
+    int mPixelWidth;
+    int mPixelHeight;
+
+    MarkerAtlasImage(final float display_width, final float display_height){
+        mWidth = display_width;
+        mHeight = display_height;
+    }
+
+    void setPage(final Bitmap page, final int page_id){
+        mBitmapSource = null;
+        mDrawableSource = null;
+        mPageId = page_id;
+        mPage = page;
+    }
+
+    public void draw(final Canvas canvas, final float x, final float y, final float width_scale, final float height_scale){
+        final Bitmap page = mPage;
+
+        if(page == null){
+            return;
+        }
+
+        final float w = mWidth*width_scale/2.0f;
+        final float h = mHeight*height_scale/2.0f;
+        mDestination.set(x - w, y - h, x + w, y + h);
+
+        canvas.drawBitmap(page, mSource, mDestination, mPaint);
+    }
+
+    public float getWidth(){
+        return mWidth;
+    }
+
+    public float getHeight(){
+        return mHeight;
+    }
+
+    @Override
+    public int getBatchKey(){
+        return mPageId;
+    }
+}
@@ -3,10 +3,62 @@ package augmented_reality.markers;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Paint;
+import android.os.Process;
+import android.os.SystemClock;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Draws the smallest of a chain of pre-scaled levels still larger than the drawn size. Trimmed levels are rebuilt in
+// the background, drawing from the source meanwhile.
 class MarkerBitmapImage extends MarkerImage{
 
-    private final Bitmap mBitmap;
+    // Levels are not generated below this size, in pixels, on their smallest side.
+    private static final int MIN_LEVEL_SIZE = 8;
+
+    // Shared by all the images, rebuilds are rare and a single low priority thread keeps them off the render cores.
+    private static final ExecutorService sLevelBuilder = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "Marker level builder");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private volatile Bitmap[] mLevels;
+    private final int mLevelCount;
+    private final float mDisplayWidth;
+    private final float mDisplayHeight;
+    private volatile long mLastDrawTime;
+    // Cache accounting for the bytes of this image, if any. Levels are only trimmed and restored under its lock.
+    private volatile MarkerImageCache mCache;
+    private final AtomicBoolean mRebuildingLevels = new AtomicBoolean(false);
+    private final Runnable mRebuildLevels = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                final Bitmap[] levels = mLevels;
+                if (levels.length < mLevelCount) {
+                    final Bitmap[] new_levels = createLevels(levels[0], mDisplayWidth, mDisplayHeight);
+                    final MarkerImageCache cache = mCache;
+                    if (cache == null || !cache.onLevelsRebuilt(MarkerBitmapImage.this, new_levels)) {
+                        restoreLevels(new_levels);
+                    }
+                }
+            } finally {
+                mRebuildingLevels.set(false);
+            }
+        }
+    };
     private final int mWidth;
     private final int mHeight;
     private final float mWidthScale;
@@ -15,6 +67,7 @@ class MarkerBitmapImage extends MarkerImage{
 
     {
         mPaint.setAntiAlias(true);
+        mPaint.setFilterBitmap(true);
     }
 
     public MarkerBitmapImage(
@@ -22,20 +75,139 @@ class MarkerBitmapImage extends MarkerImage{
             final float display_width,
             final float display_height
     ){
-        mBitmap = bitmap;
-        mWidth = mBitmap.getWidth();
-        mHeight = mBitmap.getHeight();
+        this(new Bitmap[]{bitmap}, display_width, display_height);
+    }
+
+    // levels[0] is the source, as returned by createLevels.
+    MarkerBitmapImage(
+            final Bitmap[] levels,
+            final float display_width,
+            final float display_height
+    ){
+        mLevels = levels;
+        mLevelCount = levels.length;
+        mDisplayWidth = display_width;
+        mDisplayHeight = display_height;
+        mWidth = mLevels[0].getWidth();
+        mHeight = mLevels[0].getHeight();
         mWidthScale = display_width / mWidth;
         mHeightScale = display_height / mHeight;
     }
 
+    // Halves the source down to MIN_LEVEL_SIZE and to no less than a quarter of the display size.
+    static Bitmap[] createLevels(final Bitmap source, final float display_width, final float display_height){
+        int count = 1;
+        int width = source.getWidth();
+        int height = source.getHeight();
+
+        while(
+                Math.min(width, height) / 2 >= MIN_LEVEL_SIZE &&
+                width / 2 >= display_width / 4.0f &&
+                height / 2 >= display_height / 4.0f
+        ){
+            width /= 2;
+            height /= 2;
+            count++;
+        }
+
+        final Bitmap[] levels = new Bitmap[count];
+        levels[0] = source;
+
+        for(int i=1; i<count; i++){
+            levels[i] = Bitmap.createScaledBitmap(
+                    levels[i-1],
+                    levels[i-1].getWidth() / 2,
+                    levels[i-1].getHeight() / 2,
+                    true
+            );
+        }
+
+        return levels;
+    }
+
+    // Drops the pre-scaled levels, keeping the source, and returns the number of bytes released.
+    long trimLevels(){
+        final Bitmap[] levels = mLevels;
+        if(levels.length == 1){
+            return 0;
+        }
+
+        mLevels = new Bitmap[]{levels[0]};
+
+        long bytes = 0;
+        for(int i=1; i<levels.length; i++){
+            bytes += levels[i].getByteCount();
+        }
+        return bytes;
+    }
+
+    // Puts back levels rebuilt after trimLevels, unless they were already, and returns the number of bytes added.
+    long restoreLevels(final Bitmap[] levels){
+        if(mLevels.length == mLevelCount){
+            return 0;
+        }
+
+        mLevels = levels;
+
+        long bytes = 0;
+        for(int i=1; i<levels.length; i++){
+            bytes += levels[i].getByteCount();
+        }
+        return bytes;
+    }
+
+    void setCache(final MarkerImageCache cache){
+        mCache = cache;
+    }
+
+    long getByteCount(){
+        long bytes = 0;
+        for(final Bitmap level : mLevels){
+            bytes += level.getByteCount();
+        }
+        return bytes;
+    }
+
+    // Time of the last draw, in SystemClock.uptimeMillis time base, 0 if never drawn.
+    long getLastDrawTime(){
+        return mLastDrawTime;
+    }
+
+    // Only picks among the levels that exist: trimmed levels are requested and the source is drawn until they are back.
+    private Bitmap getLevel(final float drawn_width, final float drawn_height){
+        final Bitmap[] levels = mLevels;
+        if(levels.length < mLevelCount && mRebuildingLevels.compareAndSet(false, true)){
+            sLevelBuilder.execute(mRebuildLevels);
+        }
+
+        int level = 0;
+
+        while(
+                level + 1 < levels.length &&
+                levels[level + 1].getWidth() >= drawn_width &&
+                levels[level + 1].getHeight() >= drawn_height
+        ){
+            level++;
+        }
+
+        return levels[level];
+    }
+
     public void draw(final Canvas canvas, final float x, final float y, final float width_scale, final float height_scale){
+        final float drawn_width = mWidth*mWidthScale*width_scale;
+        final float drawn_height = mHeight*mHeightScale*height_scale;
+        final Bitmap level = getLevel(Math.abs(drawn_width), Math.abs(drawn_height));
+        final int level_width = level.getWidth();
+        final int level_height = level.getHeight();
+
+        mLastDrawTime = SystemClock.uptimeMillis();
+
         canvas.save();
 
         canvas.translate(x,y);
-        canvas.scale(mWidthScale*width_scale, mHeightScale*height_scale);
+        canvas.scale(drawn_width/level_width, drawn_height/level_height);
 
-        canvas.drawBitmap(mBitmap, -mWidth/2.0f,-mHeight/2.0f, mPaint);
+        canvas.drawBitmap(level, -level_width/2.0f,-level_height/2.0f, mPaint);
 
         canvas.restore();
     }
@@ -6,4 +6,9 @@ public abstract class MarkerImage {
     public abstract void draw(Canvas canvas, float x, float y, float width_scale, float height_scale);
     public abstract float getWidth();
     public abstract float getHeight();
+
+    // Images drawing from the same bitmap return the same non zero key, see MarkerImageAtlas.
+    public int getBatchKey(){
+        return 0;
+    }
 }
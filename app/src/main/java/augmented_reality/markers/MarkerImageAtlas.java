@@ -0,0 +1,174 @@
+package augmented_reality.markers;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.drawable.Drawable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Packs marker images into a few shared pages; images sharing a page have the same batch key. Images returned by the
+// Builder can be given to markers right away and become drawable once build() has packed them.
+public class MarkerImageAtlas {
+
+    public static final int DEFAULT_PAGE_SIZE = 1024;
+
+    // Transparent border kept around each image, so filtering never samples a neighbour.
+    private static final int PADDING = 1;
+
+    private static final AtomicInteger sNextPageId = new AtomicInteger(1);
+
+    private final Bitmap[] mPages;
+
+    private MarkerImageAtlas(final Bitmap[] pages){
+        mPages = pages;
+    }
+
+    public int getPageCount(){
+        return mPages.length;
+    }
+
+    public static class Builder {
+
+        private final int mPageSize;
+        private final ArrayList<MarkerAtlasImage> mImages = new ArrayList<>();
+        private boolean mBuilt = false;
+
+        public Builder(){
+            this(DEFAULT_PAGE_SIZE);
+        }
+
+        // Images larger than page_size pixels get a page of their own.
+        public Builder(final int page_size){
+            mPageSize = page_size;
+        }
+
+        // The bitmap is copied into the atlas at its own resolution.
+        public MarkerImage add(final Bitmap bitmap, final float display_width, final float display_height){
+            return add(bitmap, null, bitmap.getWidth(), bitmap.getHeight(), display_width, display_height);
+        }
+
+        // The drawable is rasterised into the atlas at its display size.
+        public MarkerImage add(final Drawable drawable, final float display_width, final float display_height){
+            return add(
+                    null,
+                    drawable,
+                    Math.max(1, (int) Math.ceil(display_width)),
+                    Math.max(1, (int) Math.ceil(display_height)),
+                    display_width,
+                    display_height
+            );
+        }
+
+        private MarkerImage add(
+                final Bitmap bitmap,
+                final Drawable drawable,
+                final int pixel_width,
+                final int pixel_height,
+                final float display_width,
+                final float display_height
+        ){
+            if(mBuilt){
+                throw new IllegalStateException("The atlas was already built");
+            }
+
+            final MarkerAtlasImage image = new MarkerAtlasImage(display_width, display_height);
+            image.mBitmapSource = bitmap;
+            image.mDrawableSource = drawable;
+            image.mPixelWidth = pixel_width;
+            image.mPixelHeight = pixel_height;
+            mImages.add(image);
+
+            return image;
+        }
+
+        // Shelf packing by decreasing height.
+        public MarkerImageAtlas build(){
+            if(mBuilt){
+                throw new IllegalStateException("The atlas was already built");
+            }
+            mBuilt = true;
+
+            final MarkerAtlasImage[] images = mImages.toArray(new MarkerAtlasImage[mImages.size()]);
+            Arrays.sort(images, new Comparator<MarkerAtlasImage>() {
+                @Override
+                public int compare(MarkerAtlasImage a, MarkerAtlasImage b) {
+                    return b.mPixelHeight - a.mPixelHeight;
+                }
+            });
+
+            final ArrayList<Bitmap> pages = new ArrayList<>();
+            int page_start = 0;
+
+            while(page_start < images.length){
+                int x = 0;
+                int shelf_y = 0;
+                int shelf_height = 0;
+                int page_width = 0;
+                int page_end = page_start;
+
+                for(; page_end < images.length; page_end++){
+                    final MarkerAtlasImage image = images[page_end];
+                    final int w = image.mPixelWidth + 2 * PADDING;
+                    final int h = image.mPixelHeight + 2 * PADDING;
+
+                    if(x > 0 && x + w > mPageSize){
+                        shelf_y += shelf_height;
+                        x = 0;
+                        shelf_height = 0;
+                    }
+                    if(page_end > page_start && shelf_y + h > mPageSize){
+                        break;
+                    }
+
+                    image.mSource.set(x + PADDING, shelf_y + PADDING, x + PADDING + image.mPixelWidth, shelf_y + PADDING + image.mPixelHeight);
+                    x += w;
+                    shelf_height = Math.max(shelf_height, h);
+                    page_width = Math.max(page_width, x);
+                }
+
+                pages.add(drawPage(images, page_start, page_end, page_width, shelf_y + shelf_height));
+                page_start = page_end;
+            }
+
+            return new MarkerImageAtlas(pages.toArray(new Bitmap[pages.size()]));
+        }
+
+        private static Bitmap drawPage(
+                final MarkerAtlasImage[] images,
+                final int start,
+                final int end,
+                final int width,
+                final int height
+        ){
+            final Bitmap page = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            final Canvas canvas = new Canvas(page);
+            final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+            final int page_id = sNextPageId.getAndIncrement();
+
+            for(int i=start; i<end; i++){
+                final MarkerAtlasImage image = images[i];
+
+                if(image.mBitmapSource != null){
+                    canvas.drawBitmap(image.mBitmapSource, null, image.mSource, paint);
+                }
+                else{
+                    image.mDrawableSource.setBounds(
+                            image.mSource.left,
+                            image.mSource.top,
+                            image.mSource.right,
+                            image.mSource.bottom
+                    );
+                    image.mDrawableSource.draw(canvas);
+                }
+
+                image.setPage(page, page_id);
+            }
+
+            return page;
+        }
+    }
+}
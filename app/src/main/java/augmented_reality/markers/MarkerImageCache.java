@@ -0,0 +1,257 @@
+package augmented_reality.markers;
+
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+// Reference counted MarkerBitmapImage interning. Over budget, released images are evicted oldest first, then the
+// levels of off screen images are trimmed.
+class MarkerImageCache {
+
+    static final long DEFAULT_MAX_BYTES = 16 * 1024 * 1024;
+    // Released images also pin their source, which the byte budget does not see for resources.
+    static final int MAX_RELEASED_IMAGES = 64;
+
+    // Images drawn more recently than this are considered on screen and keep their levels.
+    private static final long OFF_SCREEN_DELAY = 1000;
+    // Bits of the trim sort keys holding the index of the entry, below its draw time.
+    private static final int TRIM_INDEX_BITS = 20;
+    private static final int MAX_TRIM_ENTRIES = 1 << TRIM_INDEX_BITS;
+
+    // The source is compared by identity; the version is a bitmap generation or a resource id.
+    private static final class Key {
+        final Object mSource;
+        final int mVersion;
+        final float mWidth;
+        final float mHeight;
+
+        Key(final Object source, final int version, final float width, final float height){
+            mSource = source;
+            mVersion = version;
+            mWidth = width;
+            mHeight = height;
+        }
+
+        @Override
+        public boolean equals(final Object o){
+            if(!(o instanceof Key)){
+                return false;
+            }
+            final Key key = (Key) o;
+
+            return
+                    mSource == key.mSource &&
+                    mVersion == key.mVersion &&
+                    Float.floatToIntBits(mWidth) == Float.floatToIntBits(key.mWidth) &&
+                    Float.floatToIntBits(mHeight) == Float.floatToIntBits(key.mHeight);
+        }
+
+        @Override
+        public int hashCode(){
+            int hash = System.identityHashCode(mSource);
+            hash = 31 * hash + mVersion;
+            hash = 31 * hash + Float.floatToIntBits(mWidth);
+            hash = 31 * hash + Float.floatToIntBits(mHeight);
+            return hash;
+        }
+    }
+
+    private static final class Entry {
+        final Key mKey;
+        final MarkerBitmapImage mImage;
+        int mReferences;
+        // Bytes of the image counted in mBytes.
+        long mBytes;
+
+        Entry(final Key key, final MarkerBitmapImage image){
+            mKey = key;
+            mImage = image;
+            mBytes = image.getByteCount();
+        }
+    }
+
+    private final HashMap<Key, Entry> mEntries = new HashMap<>();
+    private final IdentityHashMap<MarkerImage, Entry> mEntriesByImage = new IdentityHashMap<>();
+    // Released entries, oldest release first.
+    private final LinkedHashMap<Key, Entry> mReleased = new LinkedHashMap<>();
+    private final MarkerImageCacheStatistics mStatistics = new MarkerImageCacheStatistics();
+    private long mMaxBytes = DEFAULT_MAX_BYTES;
+    private long mBytes = 0;
+    // Scratch of trimOffScreenLevels, kept across calls so trimming does not allocate.
+    private Entry[] mTrimEntries = new Entry[16];
+    private long[] mTrimKeys = new long[16];
+
+    // Returns the cached image with one more reference, or null for the caller to create it and call add.
+    synchronized MarkerBitmapImage acquire(final Object source, final int version, final float width, final float height){
+        final Entry entry = mEntries.get(new Key(source, version, width, height));
+
+        if(entry == null){
+            mStatistics.onMiss();
+            return null;
+        }
+
+        mStatistics.onHit();
+        reference(entry);
+
+        return entry.mImage;
+    }
+
+    // Returns the given image with one reference, or the one another thread added meanwhile for the same key.
+    synchronized MarkerBitmapImage add(
+            final Object source,
+            final int version,
+            final float width,
+            final float height,
+            final MarkerBitmapImage image
+    ){
+        final Key key = new Key(source, version, width, height);
+        Entry entry = mEntries.get(key);
+
+        if(entry == null){
+            entry = new Entry(key, image);
+            mEntries.put(key, entry);
+            mEntriesByImage.put(image, entry);
+            mBytes += entry.mBytes;
+            image.setCache(this);
+        }
+
+        reference(entry);
+        trim();
+
+        return entry.mImage;
+    }
+
+    // Takes one more reference on a cached image. Returns false if the image is not cached.
+    synchronized boolean retain(final MarkerImage image){
+        final Entry entry = mEntriesByImage.get(image);
+
+        if(entry == null){
+            return false;
+        }
+
+        reference(entry);
+
+        return true;
+    }
+
+    // Returns false if the image was not acquired from this cache.
+    synchronized boolean release(final MarkerImage image){
+        final Entry entry = mEntriesByImage.get(image);
+
+        if(entry == null || entry.mReferences == 0){
+            return false;
+        }
+
+        entry.mReferences--;
+        if(entry.mReferences == 0){
+            mReleased.put(entry.mKey, entry);
+            trim();
+        }
+
+        return true;
+    }
+
+    // Returns false if the image is not cached anymore, in which case it restores its levels itself.
+    synchronized boolean onLevelsRebuilt(final MarkerBitmapImage image, final Bitmap[] levels){
+        final Entry entry = mEntriesByImage.get(image);
+
+        if(entry == null){
+            return false;
+        }
+
+        final long bytes = image.restoreLevels(levels);
+        entry.mBytes += bytes;
+        mBytes += bytes;
+        trim();
+
+        return true;
+    }
+
+    synchronized void setMaxBytes(final long max_bytes){
+        mMaxBytes = max_bytes;
+        trim();
+    }
+
+    synchronized long getMaxBytes(){
+        return mMaxBytes;
+    }
+
+    MarkerImageCacheStatistics getStatistics(){
+        return mStatistics.copy();
+    }
+
+    private void reference(final Entry entry){
+        if(entry.mReferences == 0){
+            mReleased.remove(entry.mKey);
+        }
+        entry.mReferences++;
+    }
+
+    private void trim(){
+        final Iterator<Entry> released = mReleased.values().iterator();
+        while((mBytes > mMaxBytes || mReleased.size() > MAX_RELEASED_IMAGES) && released.hasNext()){
+            final Entry entry = released.next();
+
+            released.remove();
+            mEntries.remove(entry.mKey);
+            mEntriesByImage.remove(entry.mImage);
+            entry.mImage.setCache(null);
+
+            mBytes -= entry.mBytes;
+            mStatistics.onEvicted(entry.mBytes);
+        }
+
+        if(mBytes > mMaxBytes){
+            trimOffScreenLevels(mBytes - mMaxBytes);
+        }
+
+        mStatistics.update(mBytes, mEntries.size());
+    }
+
+    // Drops the levels of the images drawn least recently, skipping the ones on screen.
+    private void trimOffScreenLevels(final long excess_bytes){
+        final long off_screen_time = SystemClock.uptimeMillis() - OFF_SCREEN_DELAY;
+        int count = 0;
+
+        // Draw times change on the render thread, so each is read once into a sort key above the entry index.
+
+        for(final Entry entry : mEntries.values()){
+            if(count == MAX_TRIM_ENTRIES){
+                break;
+            }
+
+            final long draw_time = entry.mImage.getLastDrawTime();
+            if(draw_time < off_screen_time){
+                if(count == mTrimEntries.length){
+                    mTrimEntries = Arrays.copyOf(mTrimEntries, 2 * count);
+                    mTrimKeys = Arrays.copyOf(mTrimKeys, 2 * count);
+                }
+                mTrimEntries[count] = entry;
+                mTrimKeys[count] = draw_time << TRIM_INDEX_BITS | count;
+                count++;
+            }
+        }
+
+        Arrays.sort(mTrimKeys, 0, count);
+
+        long released_bytes = 0;
+        for(int i=0; i<count && released_bytes < excess_bytes; i++){
+            final Entry entry = mTrimEntries[(int) (mTrimKeys[i] & (MAX_TRIM_ENTRIES - 1))];
+            final long bytes = entry.mImage.trimLevels();
+            entry.mBytes -= bytes;
+            released_bytes += bytes;
+        }
+
+        mBytes -= released_bytes;
+
+        // Not holding on the images.
+        Arrays.fill(mTrimEntries, 0, count, null);
+
+        mStatistics.onEvicted(released_bytes);
+    }
+}
@@ -0,0 +1,69 @@
+package augmented_reality.markers;
+
+public class MarkerImageCacheStatistics {
+    private long mHits;
+    private long mMisses;
+    private long mEvictedBytes;
+    private long mBytes;
+    private int mImages;
+
+    public MarkerImageCacheStatistics(){
+    }
+
+    private MarkerImageCacheStatistics(
+            final long hits,
+            final long misses,
+            final long evicted_bytes,
+            final long bytes,
+            final int images
+    ){
+        mHits = hits;
+        mMisses = misses;
+        mEvictedBytes = evicted_bytes;
+        mBytes = bytes;
+        mImages = images;
+    }
+
+    synchronized void onHit(){
+        mHits++;
+    }
+
+    synchronized void onMiss(){
+        mMisses++;
+    }
+
+    synchronized void onEvicted(final long bytes){
+        mEvictedBytes += bytes;
+    }
+
+    synchronized void update(final long bytes, final int images){
+        mBytes = bytes;
+        mImages = images;
+    }
+
+    public synchronized MarkerImageCacheStatistics copy(){
+        return new MarkerImageCacheStatistics(mHits, mMisses, mEvictedBytes, mBytes, mImages);
+    }
+
+    public synchronized long getHits(){
+        return mHits;
+    }
+
+    public synchronized long getMisses(){
+        return mMisses;
+    }
+
+    // Total size of the bitmaps dropped to stay within the budget.
+    public synchronized long getEvictedBytes(){
+        return mEvictedBytes;
+    }
+
+    public synchronized long getBytes(){
+        return mBytes;
+    }
+
+    // Number of images currently in the cache, referenced or not.
+    public synchronized int getImages(){
+        return mImages;
+    }
+}
@@ -1,19 +1,71 @@
 package augmented_reality.markers;
 
+import android.content.res.Resources;
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.graphics.drawable.Drawable;
 
+// Bitmap and resource images are interned, so asking twice for the same source at the same size returns the same
+// reference counted MarkerImage. Drawable and text images are not interned.
 public abstract class MarkerImageFactory {
 
+    private static final MarkerImageCache sImageCache = new MarkerImageCache();
+
+    // A bitmap is identified by its identity and generation, so it must not be modified while markers use its image.
     public static MarkerImage createMarkerImage(
             final Bitmap bitmap,
             final float display_width,
             final float display_height
     ){
-        return new MarkerBitmapImage(
+        final int generation = bitmap.getGenerationId();
+        final MarkerImage cached_image = sImageCache.acquire(bitmap, generation, display_width, display_height);
+
+        if(cached_image != null){
+            return cached_image;
+        }
+
+        return sImageCache.add(
                 bitmap,
+                generation,
                 display_width,
-                display_height
+                display_height,
+                new MarkerBitmapImage(
+                        MarkerBitmapImage.createLevels(bitmap, display_width, display_height),
+                        display_width,
+                        display_height
+                )
+        );
+    }
+
+    // The resource is only decoded the first time it is asked for at a given size.
+    public static MarkerImage createMarkerImage(
+            final Resources resources,
+            final int resource_id,
+            final float display_width,
+            final float display_height
+    ){
+        final MarkerImage cached_image = sImageCache.acquire(resources, resource_id, display_width, display_height);
+
+        if(cached_image != null){
+            return cached_image;
+        }
+
+        final Bitmap bitmap = BitmapFactory.decodeResource(resources, resource_id);
+
+        if(bitmap == null){
+            throw new IllegalArgumentException("Resource " + resource_id + " cannot be decoded as a bitmap");
+        }
+
+        return sImageCache.add(
+                resources,
+                resource_id,
+                display_width,
+                display_height,
+                new MarkerBitmapImage(
+                        MarkerBitmapImage.createLevels(bitmap, display_width, display_height),
+                        display_width,
+                        display_height
+                )
         );
     }
 
@@ -40,4 +92,45 @@ public abstract class MarkerImageFactory {
                 color
         );
     }
+
+    // Takes one more reference on an interned image, for each marker using it. Returns false if it is not interned.
+    public static boolean retainMarkerImage(final MarkerImage image){
+        return sImageCache.retain(image);
+    }
+
+    // Gives back a reference taken by createMarkerImage or retainMarkerImage. Returns false if there is none.
+    public static boolean releaseMarkerImage(final MarkerImage image){
+        return sImageCache.release(image);
+    }
+
+    // Byte budget of the bitmaps held by the image cache.
+    public static void setImageCacheSize(final long bytes){
+        sImageCache.setMaxBytes(bytes);
+    }
+
+    public static long getImageCacheSize(){
+        return sImageCache.getMaxBytes();
+    }
+
+    public static MarkerImageCacheStatistics getImageCacheStatistics(){
+        return sImageCache.getStatistics();
+    }
+
+    // Byte budget of the rasterised text labels, shared by all the text images. Changing it drops the cached labels.
+    public static void setTextLabelCacheSize(final int bytes){
+        TextLabelCache.setMaxBytes(bytes);
+    }
+
+    public static int getTextLabelCacheSize(){
+        return TextLabelCache.getMaxBytes();
+    }
+
+    // When enabled (the default), scaled text labels are re-rasterised at discrete scale steps to stay sharp.
+    public static void setTextLabelScaleStepsEnabled(final boolean enabled){
+        TextLabelCache.setScaleStepsEnabled(enabled);
+    }
+
+    public static boolean areTextLabelScaleStepsEnabled(){
+        return TextLabelCache.areScaleStepsEnabled();
+    }
 }
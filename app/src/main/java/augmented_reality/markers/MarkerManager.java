@@ -1,7 +1,15 @@
 package augmented_reality.markers;
 
 public interface MarkerManager {
+    Marker[] getMarkerArray();
+    // Copies the markers into the given array if it has the right size; use getMarkerArray() instead.
+    @Deprecated
     Marker[] getMarkerArray(Marker[] markers);
-    void updateARTransform();
+    // Returns true if the inputs, including the last getMarkerArray result, changed since it last returned true.
+
+    boolean updateARTransform();
+    int cullMarkers(Marker[] markers, Marker[] visible_markers, float max_distance);
     void stopListeningToParameters();
+    // Makes the next updateARTransform return true.
+    void requestRender();
 }
@@ -1,11 +1,25 @@
 package augmented_reality.markers;
 
+import java.util.Collection;
+import java.util.Set;
+
 public interface MarkerManagerInterface {
 
     void addMarker(Marker marker);
     boolean removeMarker(Marker marker);
+
+    // Applied at once, so the render loop never sees a partial change.
+
+    void addMarkers(Collection<? extends Marker> markers);
+    int removeMarkers(Collection<? extends Marker> markers);
+    int removeMarkersById(Set<String> ids);
+    void replaceAllMarkers(Collection<? extends Marker> markers);
+
     Marker findFirstMarkerById(String id);
     void clearMarkers();
     int getNumberOfMarkers();
     Marker getMarkerAtPosition(int pos);
+
+    // Redraws on the next frame even if the orientation, location and markers did not change. Any thread.
+    void requestRender();
 }
@@ -1,14 +1,31 @@
 package augmented_reality.markers;
 
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Paint;
+import android.graphics.RectF;
 
+// Blits the text from a TextLabelCache bitmap rasterised once per scale step, a power of sqrt(2).
 class MarkerTextImage extends MarkerImage {
 
+    private static final int MIN_SCALE_STEP = -4;
+    private static final int MAX_SCALE_STEP = 4;
+    private static final double LOG_SCALE_STEP = Math.log(Math.sqrt(2.0));
+
     private final String mText;
     private final float mHeight;
     private final float mWidth;
+    private final int mColor;
     private final Paint mPaint = new Paint();
+    private final Paint mLabelPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    // Vertical extent of the glyphs, relative to the center of the image.
+    private final float mTop;
+    private final float mBottom;
+    private final RectF mDestination = new RectF();
+
+    // Only used from the render thread.
+    private String mLabelKey;
+    private int mLabelKeyStep;
 
     public MarkerTextImage(
             final String text,
@@ -17,12 +34,28 @@ class MarkerTextImage extends MarkerImage {
     ){
         mText = text;
         mHeight = height;
+        mColor = color;
         mPaint.setColor(color);
         mPaint.setTextSize(mHeight);
         mWidth = mPaint.measureText(mText);
+        mTop = mHeight/2.0f + mPaint.ascent();
+        mBottom = mHeight/2.0f + mPaint.descent();
     }
 
     public void draw(final Canvas canvas, final float x, final float y, final float width_scale, final float height_scale) {
+        final Bitmap label = getLabel(getScaleStep(Math.max(Math.abs(width_scale), Math.abs(height_scale))));
+
+        if(label != null){
+            mDestination.set(
+                    x - mWidth/2.0f*width_scale,
+                    y + mTop*height_scale,
+                    x + mWidth/2.0f*width_scale,
+                    y + mBottom*height_scale
+            );
+            canvas.drawBitmap(label, null, mDestination, mLabelPaint);
+            return;
+        }
+
         canvas.save();
 
         canvas.translate(x,y);
@@ -38,6 +71,46 @@ class MarkerTextImage extends MarkerImage {
         canvas.restore();
     }
 
+    private static int getScaleStep(final float scale){
+        if(!TextLabelCache.areScaleStepsEnabled() || !(scale > 0.0f)){
+            return 0;
+        }
+
+        final int step = (int) Math.round(Math.log(scale) / LOG_SCALE_STEP);
+
+        return Math.max(MIN_SCALE_STEP, Math.min(MAX_SCALE_STEP, step));
+    }
+
+    // Returns null if the text cannot be rasterised, like an empty text.
+    private Bitmap getLabel(final int step){
+        if(mLabelKey == null || mLabelKeyStep != step){
+            mLabelKey = mText + '\u0000' + mHeight + '\u0000' + mColor + '\u0000' + step;
+            mLabelKeyStep = step;
+        }
+
+        final Bitmap cached_label = TextLabelCache.get(mLabelKey);
+        if(cached_label != null){
+            return cached_label;
+        }
+
+        final float scale = (float) Math.exp(step * LOG_SCALE_STEP);
+        final int width = (int) Math.ceil(mWidth * scale);
+        final int height = (int) Math.ceil((mBottom - mTop) * scale);
+
+        if(width <= 0 || height <= 0){
+            return null;
+        }
+
+        final Bitmap label = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        final Canvas label_canvas = new Canvas(label);
+        label_canvas.scale(scale, scale);
+        label_canvas.drawText(mText, 0.0f, mHeight/2.0f - mTop, mPaint);
+
+        TextLabelCache.put(mLabelKey, label);
+
+        return label;
+    }
+
     public float getWidth(){
         return mWidth;
     }
@@ -1,17 +1,20 @@
 package augmented_reality.markers;
 
 import android.graphics.Canvas;
+import android.graphics.RectF;
 
+import augmented_reality.coordinate_transformation.DirectionVector;
 import augmented_reality.coordinate_transformation.ScreenCoordinates;
 
 public class SimpleDirectionMarker extends Marker {
 
-    private final float mAngleNorth;
-    private final float mAngleElevation;
+    private final DirectionVector mDirection;
     private final MarkerImage mMarkerImage;
+    private boolean mImageRetained;
     private final float mXOffset;
     private final float mYOffset;
-    private ScreenCoordinates mLastScreenCoordinate;
+    private final ScreenCoordinates mLastScreenCoordinate = new ScreenCoordinates();
+    private boolean mLastScreenCoordinateOK = false;
 
     public SimpleDirectionMarker(
             final String id,
@@ -23,8 +26,8 @@ public class SimpleDirectionMarker extends Marker {
     ){
         super(id);
         mMarkerImage = marker_image;
-        mAngleNorth = angle_from_north_towards_east;
-        mAngleElevation = elevation_angle;
+        mImageRetained = MarkerImageFactory.retainMarkerImage(marker_image);
+        mDirection = new DirectionVector(angle_from_north_towards_east, elevation_angle);
         mXOffset = x_offset;
         mYOffset = y_offset;
     }
@@ -46,11 +49,33 @@ public class SimpleDirectionMarker extends Marker {
     }
 
     @Override
-    public final synchronized void onDraw(final Canvas canvas){
+    public final synchronized boolean onProject(final RectF bounds){
+
+        mLastScreenCoordinateOK =
+                getScreenCoordinatesFromDirection(mDirection, mLastScreenCoordinate) &&
+                mLastScreenCoordinate.getDepth() > 0.0f;
+
+        if(!mLastScreenCoordinateOK){
+            return false;
+        }
+
+        final float w = mMarkerImage.getWidth();
+        final float h = mMarkerImage.getHeight();
 
-        mLastScreenCoordinate = getScreenCoordinatesFromDirection(mAngleNorth,mAngleElevation);
+        bounds.set(
+                mLastScreenCoordinate.getX() + mXOffset - w/2.0f,
+                mLastScreenCoordinate.getY() + mYOffset - h/2.0f,
+                mLastScreenCoordinate.getX() + mXOffset + w/2.0f,
+                mLastScreenCoordinate.getY() + mYOffset + h/2.0f
+        );
 
-        if(mLastScreenCoordinate != null && mLastScreenCoordinate.getDepth() > 0.0f){
+        return true;
+    }
+
+    @Override
+    public final synchronized void onDraw(final Canvas canvas){
+
+        if(mLastScreenCoordinateOK){
             mMarkerImage.draw(
                     canvas,
                     mLastScreenCoordinate.getX() + mXOffset,
@@ -62,9 +87,23 @@ public class SimpleDirectionMarker extends Marker {
     }
 
     @Override
-    public boolean touched(final float x, final float y) {
+    public int getBatchKey(){
+        return mMarkerImage.getBatchKey();
+    }
+
+    // Gives back the reference the constructor took on the image.
+    @Override
+    public synchronized void onRemoved(){
+        if(mImageRetained){
+            mImageRetained = false;
+            MarkerImageFactory.releaseMarkerImage(mMarkerImage);
+        }
+    }
+
+    @Override
+    public synchronized boolean touched(final float x, final float y) {
 
-        if(mLastScreenCoordinate != null && mLastScreenCoordinate.getDepth() > 0.0f){
+        if(mLastScreenCoordinateOK){
             final float w = mMarkerImage.getWidth();
             final float h = mMarkerImage.getHeight();
 
@@ -78,4 +117,24 @@ public class SimpleDirectionMarker extends Marker {
             return false;
         }
     }
+
+    @Override
+    public synchronized boolean getLocalDirection(final float[] direction) {
+
+        if(!updateDirectionVector(mDirection)){
+            return false;
+        }
+
+        direction[0] = mDirection.getEast();
+        direction[1] = mDirection.getNorth();
+        direction[2] = mDirection.getUp();
+        direction[3] = 0.0f;
+
+        return true;
+    }
+
+    @Override
+    public synchronized void onHidden() {
+        mLastScreenCoordinateOK = false;
+    }
 }
@@ -1,16 +1,22 @@
 package augmented_reality.markers;
 
 import android.graphics.Canvas;
+import android.graphics.RectF;
 import android.location.Location;
 
+import augmented_reality.coordinate_transformation.LocalCoordinates;
 import augmented_reality.coordinate_transformation.ScreenCoordinates;
 
 public class SimpleLocationMarker extends Marker {
     private final Location mLocation;
     private final MarkerImage mMarkerImage;
+    private boolean mImageRetained;
     private final float mXOffset;
     private final float mYOffset;
-    private ScreenCoordinates mLastScreenCoordinate;
+    private final LocalCoordinates mLocalCoordinates = new LocalCoordinates();
+    private final ScreenCoordinates mLastScreenCoordinate = new ScreenCoordinates();
+    private boolean mLastScreenCoordinateOK = false;
+    private float mScale;
 
     public SimpleLocationMarker(
             final String id,
@@ -22,6 +28,7 @@ public class SimpleLocationMarker extends Marker {
         super(id);
         mLocation = location;
         mMarkerImage = marker_image;
+        mImageRetained = MarkerImageFactory.retainMarkerImage(marker_image);
         mXOffset = x_offset;
         mYOffset = y_offset;
     }
@@ -41,48 +48,105 @@ public class SimpleLocationMarker extends Marker {
     }
 
     @Override
-    public final synchronized void onDraw(final Canvas canvas){
+    public final synchronized boolean onProject(final RectF bounds){
+
+        mLastScreenCoordinateOK =
+                getScreenCoordinatesFromLocation(mLocation, mLocalCoordinates, mLastScreenCoordinate) &&
+                mLastScreenCoordinate.getDepth() > 0.0f;
+
+        if(mLastScreenCoordinateOK){
+            mScale = getScaleFromDistance(mLastScreenCoordinate.getDepth());
+            mLastScreenCoordinateOK = mScale > 0.0f;
+        }
 
-        mLastScreenCoordinate = getScreenCoordinatesFromLocation(mLocation);
+        if(!mLastScreenCoordinateOK){
+            return false;
+        }
+
+        final float w = mMarkerImage.getWidth();
+        final float h = mMarkerImage.getHeight();
 
-        if(mLastScreenCoordinate != null && mLastScreenCoordinate.getDepth() > 0.0f){
+        bounds.set(
+                mLastScreenCoordinate.getX() + (mXOffset - w / 2.0f) * mScale,
+                mLastScreenCoordinate.getY() + (mYOffset - h / 2.0f) * mScale,
+                mLastScreenCoordinate.getX() + (mXOffset + w / 2.0f) * mScale,
+                mLastScreenCoordinate.getY() + (mYOffset + h / 2.0f) * mScale
+        );
 
-            final float scale = getScaleFromDistance(mLastScreenCoordinate.getDepth());
+        return true;
+    }
 
-            if(scale > 0.0f) {
-                mMarkerImage.draw(
-                        canvas,
-                        mLastScreenCoordinate.getX() + mXOffset * scale,
-                        mLastScreenCoordinate.getY() + mYOffset * scale,
-                        scale,
-                        scale
-                );
-            }
+    @Override
+    public final synchronized void onDraw(final Canvas canvas){
+
+        if(mLastScreenCoordinateOK){
+            mMarkerImage.draw(
+                    canvas,
+                    mLastScreenCoordinate.getX() + mXOffset * mScale,
+                    mLastScreenCoordinate.getY() + mYOffset * mScale,
+                    mScale,
+                    mScale
+            );
         }
     }
 
     @Override
-    public boolean touched(final float x, final float y) {
+    public int getBatchKey(){
+        return mMarkerImage.getBatchKey();
+    }
 
-        if(mLastScreenCoordinate != null && mLastScreenCoordinate.getDepth() > 0.0f){
+    // Gives back the reference the constructor took on the image.
+    @Override
+    public synchronized void onRemoved(){
+        if(mImageRetained){
+            mImageRetained = false;
+            MarkerImageFactory.releaseMarkerImage(mMarkerImage);
+        }
+    }
 
-            final float scale = getScaleFromDistance(mLastScreenCoordinate.getDepth());
+    @Override
+    public synchronized boolean touched(final float x, final float y) {
 
-            if(scale > 0.0f) {
-                final float w = mMarkerImage.getWidth();
-                final float h = mMarkerImage.getHeight();
+        if(mLastScreenCoordinateOK){
+            final float w = mMarkerImage.getWidth();
+            final float h = mMarkerImage.getHeight();
 
-                return
-                        x >= mLastScreenCoordinate.getX() + (mXOffset - w / 2.0f) * scale &&
-                        y >= mLastScreenCoordinate.getY() + (mYOffset - h / 2.0f) * scale &&
-                        x <= mLastScreenCoordinate.getX() + (mXOffset + w / 2.0f) * scale &&
-                        y <= mLastScreenCoordinate.getY() + (mYOffset + h / 2.0f) * scale;
-            }
+            return
+                    x >= mLastScreenCoordinate.getX() + (mXOffset - w / 2.0f) * mScale &&
+                    y >= mLastScreenCoordinate.getY() + (mYOffset - h / 2.0f) * mScale &&
+                    x <= mLastScreenCoordinate.getX() + (mXOffset + w / 2.0f) * mScale &&
+                    y <= mLastScreenCoordinate.getY() + (mYOffset + h / 2.0f) * mScale;
         }
 
         return false;
     }
 
+    @Override
+    public synchronized boolean getLocalDirection(final float[] direction) {
+
+        if(!updateLocalCoordinates(mLocation, mLocalCoordinates)){
+            return false;
+        }
+
+        final float distance = mLocalCoordinates.getDistance();
+
+        if(distance <= 0.0f){
+            return false;
+        }
+
+        direction[0] = mLocalCoordinates.getEast() / distance;
+        direction[1] = mLocalCoordinates.getNorth() / distance;
+        direction[2] = mLocalCoordinates.getUp() / distance;
+        direction[3] = distance;
+
+        return true;
+    }
+
+    @Override
+    public synchronized void onHidden() {
+        mLastScreenCoordinateOK = false;
+    }
+
     protected float getScaleFromDistance(final float distance){
         return 1.0f;
     }
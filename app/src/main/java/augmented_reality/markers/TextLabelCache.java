@@ -0,0 +1,51 @@
+package augmented_reality.markers;
+
+import android.graphics.Bitmap;
+import android.util.LruCache;
+
+// Rasterised text labels shared by the MarkerTextImage instances, evicted least recently drawn first.
+
+class TextLabelCache {
+
+    static final int DEFAULT_MAX_BYTES = 4 * 1024 * 1024;
+
+    private static volatile LruCache<String, Bitmap> sLabels = createLabels(DEFAULT_MAX_BYTES);
+    private static volatile boolean sScaleStepsEnabled = true;
+
+    private TextLabelCache(){
+    }
+
+    private static LruCache<String, Bitmap> createLabels(final int max_bytes){
+        return new LruCache<String, Bitmap>(Math.max(1, max_bytes)) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+    }
+
+    static Bitmap get(final String key){
+        return sLabels.get(key);
+    }
+
+    static void put(final String key, final Bitmap label){
+        sLabels.put(key, label);
+    }
+
+    // Drops the cached labels.
+    static void setMaxBytes(final int max_bytes){
+        sLabels = createLabels(max_bytes);
+    }
+
+    static int getMaxBytes(){
+        return sLabels.maxSize();
+    }
+
+    static void setScaleStepsEnabled(final boolean enabled){
+        sScaleStepsEnabled = enabled;
+    }
+
+    static boolean areScaleStepsEnabled(){
+        return sScaleStepsEnabled;
+    }
+}
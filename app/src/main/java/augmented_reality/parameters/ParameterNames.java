@@ -5,7 +5,28 @@ public abstract class ParameterNames {
     public static final String TIME_BETWEEN_LOCATION_READS = "location_time";
     public static final String GRAVITY_FILTER_COEFFICIENT = "gravity_filter";
     public static final String MAGNETIC_FIELD_FILTER_COEFFICIENT = "magnetic_filter";
+    public static final String FILTER_MODE = "filter_mode";
+    public static final String GRAVITY_FILTER_TIME_CONSTANT = "gravity_filter_time_constant";
+    public static final String MAGNETIC_FIELD_FILTER_TIME_CONSTANT = "magnetic_filter_time_constant";
     public static final String VIEW_ANGLES = "view_angles";
     public static final String ASPECT_RATIO_OPTIMIZATION_WEIGHT = "aspect_ratio_opt";
     public static final String PRECISE_LOCATION_OK = "location_failing";
+    public static final String MAX_MARKER_DISTANCE = "max_marker_distance";
+    public static final String FRAME_SCHEDULER_MODE = "frame_scheduler_mode";
+    public static final String TARGET_FRAME_RATE = "target_frame_rate";
+    public static final String ROTATION_CHANGE_EPSILON = "rotation_change_epsilon";
+    public static final String ORIENTATION_MODE = "orientation_mode";
+    public static final String PREDICTION_ENABLED = "prediction_enabled";
+    public static final String PREDICTION_HORIZON = "prediction_horizon";
+    public static final String SENSOR_SAMPLING_PERIOD = "sensor_sampling_period";
+    public static final String SENSOR_MAX_REPORT_LATENCY = "sensor_max_report_latency";
+    public static final String DEVICE_STATIONARY = "device_stationary";
+    public static final String MOTION_DETECTION_ENABLED = "motion_detection_enabled";
+    public static final String MAX_PREVIEW_PIXELS = "max_preview_pixels";
+    public static final String PARALLEL_PROJECTION_THRESHOLD = "parallel_projection_threshold";
+    public static final String DECLUTTER_MODE = "declutter_mode";
+    public static final String CLUSTERING_DISTANCE = "clustering_distance";
+    public static final String CLUSTER_CELL_ANGLE = "cluster_cell_angle";
+    public static final String RENDERER = "renderer";
+    public static final String FRAME_SKIPPING_ENABLED = "frame_skipping_enabled";
 }
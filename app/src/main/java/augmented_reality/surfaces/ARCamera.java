@@ -51,6 +51,10 @@ class ARCamera {
         mParameters.setParameter(ParameterNames.VIEW_ANGLES, new float[] {0.0f, 0.0f} );
     }
 
+    public boolean isPreviewRunning(){
+        return mCameraStatus == CameraStatus.RUNNING;
+    }
+
     public void stopPreview(final boolean lock_camera){
         if(mCamera != null){
             if(mCameraStatus == CameraStatus.RUNNING){
@@ -154,11 +158,25 @@ class ARCamera {
         Camera.Size biggest_size = null;
 
         final float aspect_ratio_weight = (Float) mParameters.getParameter(ParameterNames.ASPECT_RATIO_OPTIMIZATION_WEIGHT);
+        final int max_pixels = (Integer) mParameters.getParameter(ParameterNames.MAX_PREVIEW_PIXELS);
         final Camera.Parameters camera_parameters = mCamera.getParameters();
         final List<Camera.Size> supportedSizes = camera_parameters.getSupportedPreviewSizes();
+        Camera.Size smallest_size = null;
 
         for (Camera.Size size : supportedSizes) {
 
+            if (smallest_size == null || size.width * size.height < smallest_size.width * smallest_size.height){
+                smallest_size = size;
+            }
+
+            if (biggest_size == null || size.width * size.height > biggest_size.width * biggest_size.height){
+                biggest_size = size;
+            }
+
+            if (max_pixels > 0 && size.width * size.height > max_pixels) {
+                continue;
+            }
+
             final float preview_aspect_ratio = (float) size.height / (float) size.width;
             final float grade = size.width * size.height / (0.05f + aspect_ratio_weight*Math.abs(preview_aspect_ratio-surface_aspect_ratio));
 
@@ -166,10 +184,11 @@ class ARCamera {
                 best_size = size;
                 best_grade = grade;
             }
+        }
 
-            if (biggest_size == null || size.width * size.height > biggest_size.width * biggest_size.height){
-                biggest_size = size;
-            }
+        // No size fits the pixel budget, the smallest one is the closest.
+        if (best_size == null) {
+            best_size = smallest_size;
         }
 
         assert best_size != null;
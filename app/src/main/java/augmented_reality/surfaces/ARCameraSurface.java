@@ -1,18 +1,22 @@
 package augmented_reality.surfaces;
 
 import android.content.Context;
+import android.os.Handler;
 import android.view.Display;
 import android.view.SurfaceHolder;
 import android.view.SurfaceView;
 import android.view.WindowManager;
 
 import augmented_reality.parameters.ParameterManager;
+import augmented_reality.parameters.ParameterNames;
 
 public class ARCameraSurface extends SurfaceView implements SurfaceHolder.Callback{
 
     private final ARCamera mARCamera;
     private final Context mContext;
+    private final ParameterManager<String> mParameters;
     private int mSurfaceRotation;
+    private Object mMaxPreviewPixelsCallbackID;
 
     {
         getHolder().addCallback(this);
@@ -21,6 +25,7 @@ public class ARCameraSurface extends SurfaceView implements SurfaceHolder.Callba
     public ARCameraSurface(final Context context, final ParameterManager<String> parameters){
         super(context);
         mContext = context;
+        mParameters = parameters;
         mARCamera = new ARCamera(parameters);
     }
 
@@ -28,6 +33,25 @@ public class ARCameraSurface extends SurfaceView implements SurfaceHolder.Callba
     public void surfaceCreated(SurfaceHolder holder) {
         updateSurfaceRotation();
         mARCamera.startPreview(holder, mSurfaceRotation);
+
+        mMaxPreviewPixelsCallbackID =
+                mParameters.registerCallback(
+                        ParameterNames.MAX_PREVIEW_PIXELS,
+                        new ParameterManager.DataChangedCallback() {
+                            @Override
+                            public void onDataChanged(Object key, Object data, Object old_data) {
+                                if(
+                                        mMaxPreviewPixelsCallbackID != null &&
+                                        !data.equals(old_data) &&
+                                        mARCamera.isPreviewRunning()
+                                ) {
+                                    mARCamera.stopPreview(true);
+                                    restartCamera();
+                                }
+                            }
+                        },
+                        new Handler()
+                );
     }
 
     @Override
@@ -39,6 +63,8 @@ public class ARCameraSurface extends SurfaceView implements SurfaceHolder.Callba
 
     @Override
     public void surfaceDestroyed(SurfaceHolder holder) {
+        mParameters.removeCallback(ParameterNames.MAX_PREVIEW_PIXELS, mMaxPreviewPixelsCallbackID);
+        mMaxPreviewPixelsCallbackID = null;
         mARCamera.releaseCamera();
     }
 
@@ -3,7 +3,6 @@ package augmented_reality.surfaces;
 import android.annotation.TargetApi;
 import android.content.Context;
 import android.graphics.Rect;
-import android.hardware.GeomagneticField;
 import android.location.Location;
 import android.os.Build;
 import android.os.HandlerThread;
@@ -12,13 +11,19 @@ import android.view.SurfaceHolder;
 import android.view.SurfaceView;
 import android.view.WindowManager;
 
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.concurrent.atomic.AtomicReference;
 
 import augmented_reality.interfaces.ARStatusInterface;
 import augmented_reality.coordinate_transformation.ARTransform;
+import augmented_reality.coordinate_transformation.DirectionVector;
+import augmented_reality.coordinate_transformation.LocalCoordinates;
 import augmented_reality.interfaces.LocationToScreenCoordinatesTranslator;
+import augmented_reality.kernel.CullingStatistics;
 import augmented_reality.parameters.ParameterManager;
 import augmented_reality.parameters.ParameterNames;
 import augmented_reality.coordinate_transformation.ScreenCoordinates;
@@ -45,18 +50,74 @@ public class ARMarkersSurface extends SurfaceView implements
         }
     }
 
-    private final List<Marker> mMarkers = new LinkedList<>();
-    private final SharedData<float[]> mGravityData = new SharedData<>();
-    private final SharedData<float[]> mMagneticFieldData = new SharedData<>();
+    // Allocation free seqlock for a small float vector with a single writer. Volatile elements keep the re-check ordered.
+
+    public static class SharedVector {
+        private final AtomicInteger mSequence = new AtomicInteger();
+        private final AtomicIntegerArray mData;
+
+        SharedVector(final int size) {
+            mData = new AtomicIntegerArray(size);
+        }
+
+        void setData(final float[] data) {
+            mSequence.incrementAndGet();
+            for (int i = 0; i < mData.length(); i++) {
+                mData.set(i, Float.floatToRawIntBits(data[i]));
+            }
+            mSequence.incrementAndGet();
+        }
+
+        // Returns false if no data was published yet.
+        boolean getData(final float[] data) {
+            while (true) {
+                final int sequence = mSequence.get();
+                if (sequence == 0) {
+                    return false;
+                }
+                if ((sequence & 1) != 0) {
+                    continue;
+                }
+                for (int i = 0; i < mData.length(); i++) {
+                    data[i] = Float.intBitsToFloat(mData.get(i));
+                }
+                if (mSequence.get() == sequence) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    private final MarkerRegistry mMarkers = new MarkerRegistry();
+    private final MarkerClusterer mClusterer = new MarkerClusterer(this);
+    private final MarkerSpatialIndex mSpatialIndex = new MarkerSpatialIndex();
+    private final CullingCounters mCullingCounters = new CullingCounters();
+    private final FrameSnapshotBuffer mFrameSnapshots = new FrameSnapshotBuffer();
+    private final float[] mViewAxis = new float[3];
+    private final SharedVector mOrientationData = new SharedVector(9);
+    private final AtomicInteger mSensorStatus = new AtomicInteger();
+    private final float[] mOrientation = new float[9];
+    private final SharedVector mAngularVelocityData = new SharedVector(3);
+    private final float[] mAngularVelocity = new float[3];
+    private final OrientationPredictor mOrientationPredictor = new OrientationPredictor();
     private final SharedData<Location> mLocationData = new SharedData<>();
     private final SharedData<float[]> mViewAngles = new SharedData<>();
-    private final SharedData<GeomagneticField> mGeomagneticFieldData = new SharedData<>();
+    private final SharedVector mDeclinationData = new SharedVector(1);
+    private final float[] mDeclination = new float[1];
     private final SharedData<Integer> mStatus = new SharedData<>();
     private volatile int mSurfaceRotation;
     private volatile int mWindowWidth;
     private volatile int mWindowHeight;
     private boolean mCallbackSet = false;
     private Object mViewAnglesCallbackID;
+    private Object mRotationChangeEpsilonCallbackID;
+    private Object mPredictionEnabledCallbackID;
+    private Object mPredictionHorizonCallbackID;
+    private Object mClusteringDistanceCallbackID;
+    private Object mClusterCellAngleCallbackID;
+    private volatile float mRotationChangeCosine;
+    // Set when the next frame must be drawn even if its inputs did not change.
+    private final AtomicBoolean mRenderRequested = new AtomicBoolean(false);
 
     private DrawerThread mDrawerThread;
     private SensorThread mSensorThread;
@@ -64,6 +125,16 @@ public class ARMarkersSurface extends SurfaceView implements
     private final ParameterManager<String> mParameters;
     private volatile ARTransform mARTransform;
 
+    // Inputs of the last frame reported as changed, used to skip frames that would be identical.
+    private final float[] mRotation = new float[9];
+    private final float[] mDrawnRotation = new float[9];
+    private boolean mDrawnRotationOK = false;
+    private int mDrawnFixId;
+    private int mDrawnMarkersVersion;
+    // Version of the snapshot last returned by getMarkerArray, so the frame is compared against what is drawn.
+    private int mMarkerArrayVersion;
+    private int mDrawnStatus;
+
     {
         getHolder().addCallback(this);
     }
@@ -114,16 +185,38 @@ public class ARMarkersSurface extends SurfaceView implements
     @Override
     public void addMarker(final Marker marker) {
         marker.SetTranslator(this);
-        synchronized (mMarkers) {
-            mMarkers.add(marker);
-        }
+        mMarkers.add(marker);
     }
 
     @Override
     public boolean removeMarker(final Marker marker) {
-        synchronized (mMarkers) {
-            return mMarkers.remove(marker);
+        return mMarkers.remove(marker);
+    }
+
+    @Override
+    public void addMarkers(final Collection<? extends Marker> markers) {
+        for(final Marker marker : markers){
+            marker.SetTranslator(this);
         }
+        mMarkers.addAll(markers);
+    }
+
+    @Override
+    public int removeMarkers(final Collection<? extends Marker> markers) {
+        return mMarkers.removeAll(markers);
+    }
+
+    @Override
+    public int removeMarkersById(final Set<String> ids) {
+        return mMarkers.removeAllById(ids);
+    }
+
+    @Override
+    public void replaceAllMarkers(final Collection<? extends Marker> markers) {
+        for(final Marker marker : markers){
+            marker.SetTranslator(this);
+        }
+        mMarkers.replaceAll(markers);
     }
 
     @Override
@@ -132,36 +225,22 @@ public class ARMarkersSurface extends SurfaceView implements
             id = "";
         }
 
-        final Marker[] markers = getMarkerArray(new Marker[0]);
-
-        for(Marker marker : markers){
-            if(marker.getId().equals(id)){
-                return marker;
-            }
-        }
-
-        return null;
+        return mMarkers.getSnapshot().mFirstMarkerById.get(id);
     }
 
     @Override
     public void clearMarkers() {
-        synchronized (mMarkers) {
-            mMarkers.clear();
-        }
+        mMarkers.clear();
     }
 
     @Override
     public int getNumberOfMarkers() {
-        synchronized (mMarkers) {
-            return mMarkers.size();
-        }
+        return mMarkers.getSnapshot().mMarkers.length;
     }
 
     @Override
     public Marker getMarkerAtPosition(final int pos) {
-        synchronized (mMarkers) {
-            return mMarkers.get(pos);
-        }
+        return mMarkers.getSnapshot().mMarkers[pos];
     }
 
     @Override
@@ -205,29 +284,73 @@ public class ARMarkersSurface extends SurfaceView implements
         return new Location(mLocationData.getData());
     }
 
+    // Hit tests the last drawn frame, so it never waits for the render thread nor locks the markers.
     public Marker getTouchedMarker(final float x, final float y){
-        final Marker[] markers = getMarkerArray(new Marker[0]);
-        for(int i=markers.length-1; i>=0; i--){
-            final Marker marker = markers[i];
-            if(marker.touched(x,y)){
-                return marker;
-            }
-        }
-        return null;
+        return mFrameSnapshots.hitTest(x, y);
     }
 
+    // The returned array is the current immutable snapshot of the registry and must not be modified.
+    @Override
+    public Marker[] getMarkerArray() {
+        final MarkerRegistry.Snapshot snapshot = mMarkers.getSnapshot();
+        mMarkerArrayVersion = snapshot.mVersion;
+        return snapshot.mMarkers;
+    }
+
+    @Deprecated
     @Override
     public Marker[] getMarkerArray(final Marker[] markers) {
-        synchronized (mMarkers)
-        {
-            return mMarkers.toArray(markers);
+        final Marker[] snapshot = getMarkerArray();
+        final Marker[] copy = markers.length == snapshot.length ? markers : new Marker[snapshot.length];
+        System.arraycopy(snapshot, 0, copy, 0, snapshot.length);
+        return copy;
+    }
+
+    @Override
+    public int cullMarkers(final Marker[] markers, final Marker[] visible_markers, final float max_distance) {
+        final ARTransform transform = mARTransform;
+
+        if(transform == null || !transform.getViewAxis(mViewAxis)){
+            return mSpatialIndex.collectAll(markers, visible_markers, mCullingCounters);
         }
+
+        final int fix_id = transform.getLocationFixId();
+        mSpatialIndex.update(mClusterer.update(markers, fix_id), fix_id);
+
+        return mSpatialIndex.collect(
+                mViewAxis,
+                transform.getViewConeHalfAngle(),
+                max_distance,
+                visible_markers,
+                mCullingCounters
+        );
+    }
+
+    public CullingStatistics getCullingStatistics(){
+        return mCullingCounters.snapshot();
+    }
+
+    private static float getRotationChangeCosine(final float epsilon_degrees){
+        return (float) Math.cos(epsilon_degrees / 180.0 * Math.PI);
+    }
+
+    // The trace of Ra^T * Rb is 1 + 2*cos(angle) where angle is the rotation between the two orientations.
+    private boolean hasRotationChanged(){
+        float trace = 0.0f;
+        for(int i=0; i<9; i++){
+            trace += mRotation[i] * mDrawnRotation[i];
+        }
+
+        return (trace - 1.0f) / 2.0f < mRotationChangeCosine;
     }
 
     @Override
-    public void updateARTransform() {
+    public boolean updateARTransform() {
+
+        boolean changed = false;
 
         if (mARTransform == null) {
+            changed = true;
 
             if(!mCallbackSet) {
                 while(
@@ -238,12 +361,73 @@ public class ARMarkersSurface extends SurfaceView implements
                                     @Override
                                     public void onDataChanged(Object key, Object data, Object old_data) {
                                         mViewAngles.setData((float[]) data);
+                                        requestRender();
                                     }
                                 }
                             ))
                 ) {}
+                mRotationChangeEpsilonCallbackID =
+                        mParameters.registerCallback(
+                                ParameterNames.ROTATION_CHANGE_EPSILON,
+                                new ParameterManager.DataChangedCallback() {
+                                    @Override
+                                    public void onDataChanged(Object key, Object data, Object old_data) {
+                                        mRotationChangeCosine = getRotationChangeCosine((Float) data);
+                                        requestRender();
+                                    }
+                                }
+                        );
+                mPredictionEnabledCallbackID =
+                        mParameters.registerCallback(
+                                ParameterNames.PREDICTION_ENABLED,
+                                new ParameterManager.DataChangedCallback() {
+                                    @Override
+                                    public void onDataChanged(Object key, Object data, Object old_data) {
+                                        mOrientationPredictor.setEnabled((Boolean) data);
+                                        requestRender();
+                                    }
+                                }
+                        );
+                mPredictionHorizonCallbackID =
+                        mParameters.registerCallback(
+                                ParameterNames.PREDICTION_HORIZON,
+                                new ParameterManager.DataChangedCallback() {
+                                    @Override
+                                    public void onDataChanged(Object key, Object data, Object old_data) {
+                                        mOrientationPredictor.setHorizon((Long) data);
+                                        requestRender();
+                                    }
+                                }
+                        );
+                mClusteringDistanceCallbackID =
+                        mParameters.registerCallback(
+                                ParameterNames.CLUSTERING_DISTANCE,
+                                new ParameterManager.DataChangedCallback() {
+                                    @Override
+                                    public void onDataChanged(Object key, Object data, Object old_data) {
+                                        mClusterer.setDistance((Float) data);
+                                        requestRender();
+                                    }
+                                }
+                        );
+                mClusterCellAngleCallbackID =
+                        mParameters.registerCallback(
+                                ParameterNames.CLUSTER_CELL_ANGLE,
+                                new ParameterManager.DataChangedCallback() {
+                                    @Override
+                                    public void onDataChanged(Object key, Object data, Object old_data) {
+                                        mClusterer.setCellAngle((Float) data);
+                                        requestRender();
+                                    }
+                                }
+                        );
                 mCallbackSet = true;
+                mClusterer.setDistance((Float) mParameters.getParameter(ParameterNames.CLUSTERING_DISTANCE));
+                mClusterer.setCellAngle((Float) mParameters.getParameter(ParameterNames.CLUSTER_CELL_ANGLE));
+                mOrientationPredictor.setEnabled((Boolean) mParameters.getParameter(ParameterNames.PREDICTION_ENABLED));
+                mOrientationPredictor.setHorizon((Long) mParameters.getParameter(ParameterNames.PREDICTION_HORIZON));
                 mViewAngles.setData((float[]) mParameters.getParameter(ParameterNames.VIEW_ANGLES));
+                mRotationChangeCosine = getRotationChangeCosine((Float) mParameters.getParameter(ParameterNames.ROTATION_CHANGE_EPSILON));
             }
 
             final float[] view_angles = mViewAngles.getData();
@@ -257,20 +441,60 @@ public class ARMarkersSurface extends SurfaceView implements
             );
         }
 
+        final boolean orientation_ok = mOrientationData.getData(mOrientation);
+
+        if (orientation_ok && mOrientationPredictor.isEnabled() && mAngularVelocityData.getData(mAngularVelocity)) {
+            mOrientationPredictor.predict(mOrientation, mAngularVelocity);
+        }
+
         final int status =
             mARTransform.update(
-                    mGravityData.getData(),
-                    mMagneticFieldData.getData(),
+                    orientation_ok ? mOrientation : null,
+                    mSensorStatus.get(),
                     mLocationData.getData(),
-                    mGeomagneticFieldData.getData()
+                    mDeclinationData.getData(mDeclination) ? mDeclination[0] : Float.NaN
             );
 
         mStatus.setData(status);
+
+        final boolean render_requested = mRenderRequested.getAndSet(false);
+        final boolean rotation_ok = mARTransform.getRotationMatrix(mRotation);
+        final int fix_id = mARTransform.getLocationFixId();
+        final int markers_version = mMarkerArrayVersion;
+
+        changed =
+                changed ||
+                render_requested ||
+                status != mDrawnStatus ||
+                fix_id != mDrawnFixId ||
+                markers_version != mDrawnMarkersVersion ||
+                rotation_ok != mDrawnRotationOK ||
+                (rotation_ok && hasRotationChanged());
+
+        if(changed){
+            System.arraycopy(mRotation, 0, mDrawnRotation, 0, 9);
+            mDrawnRotationOK = rotation_ok;
+            mDrawnFixId = fix_id;
+            mDrawnMarkersVersion = markers_version;
+            mDrawnStatus = status;
+        }
+
+        return changed;
+    }
+
+    @Override
+    public void requestRender(){
+        mRenderRequested.set(true);
     }
 
     @Override
     public void stopListeningToParameters(){
         mParameters.removeCallback(ParameterNames.VIEW_ANGLES,mViewAnglesCallbackID);
+        mParameters.removeCallback(ParameterNames.ROTATION_CHANGE_EPSILON,mRotationChangeEpsilonCallbackID);
+        mParameters.removeCallback(ParameterNames.PREDICTION_ENABLED,mPredictionEnabledCallbackID);
+        mParameters.removeCallback(ParameterNames.PREDICTION_HORIZON,mPredictionHorizonCallbackID);
+        mParameters.removeCallback(ParameterNames.CLUSTERING_DISTANCE,mClusteringDistanceCallbackID);
+        mParameters.removeCallback(ParameterNames.CLUSTER_CELL_ANGLE,mClusterCellAngleCallbackID);
         mCallbackSet = false;
     }
 
@@ -279,11 +503,91 @@ public class ARMarkersSurface extends SurfaceView implements
         return mARTransform.getScreenCoordinatesFromLocation(location);
     }
 
+    @Override
+    public ScreenCoordinates getScreenCoordinatesFromLocation(final Location location, final LocalCoordinates local_coordinates) {
+        return mARTransform.getScreenCoordinatesFromLocation(location, local_coordinates);
+    }
+
+    @Override
+    public boolean getScreenCoordinatesFromLocation(
+            final Location location,
+            final LocalCoordinates local_coordinates,
+            final ScreenCoordinates screen_coordinates
+    ) {
+        return mARTransform.getScreenCoordinatesFromLocation(location, local_coordinates, screen_coordinates);
+    }
+
+    @Override
+    public boolean updateLocalCoordinates(final Location location, final LocalCoordinates local_coordinates) {
+        return mARTransform.updateLocalCoordinates(location, local_coordinates);
+    }
+
+    @Override
+    public int getLocationFixId() {
+        return mARTransform.getLocationFixId();
+    }
+
+    @Override
+    public boolean getScreenCoordinatesFromLocations(
+            final double[] latitudes,
+            final double[] longitudes,
+            final double[] altitudes,
+            final int count,
+            final float[] x_out,
+            final float[] y_out,
+            final float[] depth_out,
+            final float[] distance_out
+    ) {
+        return mARTransform.getScreenCoordinatesFromLocations(
+                latitudes,
+                longitudes,
+                altitudes,
+                count,
+                x_out,
+                y_out,
+                depth_out,
+                distance_out
+        );
+    }
+
+    @Override
+    public boolean getDirectionVector(final float angle_from_north_towards_east, final float elevation_angle, final float[] direction) {
+        return mARTransform.getDirectionVector(angle_from_north_towards_east, elevation_angle, direction);
+    }
+
     @Override
     public ScreenCoordinates getScreenCoordinatesFromDirection(final float angle_from_north_towards_east, final float elevation_angle) {
         return mARTransform.getScreenCoordinatesFromDirection(angle_from_north_towards_east, elevation_angle);
     }
 
+    @Override
+    public ScreenCoordinates getScreenCoordinatesFromDirection(final DirectionVector direction) {
+        return mARTransform.getScreenCoordinatesFromDirection(direction);
+    }
+
+    @Override
+    public boolean getScreenCoordinatesFromDirection(
+            final DirectionVector direction,
+            final ScreenCoordinates screen_coordinates
+    ) {
+        return mARTransform.getScreenCoordinatesFromDirection(direction, screen_coordinates);
+    }
+
+    @Override
+    public boolean updateDirectionVector(final DirectionVector direction) {
+        return mARTransform.updateDirectionVector(direction);
+    }
+
+    @Override
+    public boolean getScreenCoordinatesFromLocalDirection(
+            final float east,
+            final float north,
+            final float up,
+            final ScreenCoordinates screen_coordinates
+    ) {
+        return mARTransform.getScreenCoordinatesFromLocalDirection(east, north, up, screen_coordinates);
+    }
+
     @Override
     public int getWindowWidth() {
         return mWindowWidth;
@@ -298,17 +602,20 @@ public class ARMarkersSurface extends SurfaceView implements
         mDrawerThread = new DrawerThread(
                 this,
                 holder,
-                mParameters
+                mParameters,
+                mFrameSnapshots,
+                mCullingCounters
         );
         mDrawerThread.start();
 
         mSensorThread = new SensorThread(
                 "Sensor thread",
                 mContext,
-                mGravityData,
-                mMagneticFieldData,
+                mOrientationData,
+                mAngularVelocityData,
+                mSensorStatus,
                 mLocationData,
-                mGeomagneticFieldData,
+                mDeclinationData,
                 mParameters
         );
         mSensorThread.start();
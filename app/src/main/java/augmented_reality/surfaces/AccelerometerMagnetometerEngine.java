@@ -0,0 +1,102 @@
+package augmented_reality.surfaces;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorManager;
+import android.os.Handler;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import augmented_reality.kernel.AugmentedRealityKernelInterface;
+
+// Smoothed gravity and magnetic field vectors combined by SensorManager.getRotationMatrix.
+class AccelerometerMagnetometerEngine extends OrientationEngine {
+
+    private final LowPassFilter mGravity = new LowPassFilter();
+    private final LowPassFilter mMagneticField = new LowPassFilter();
+    private final float[] mRotation = new float[9];
+    private volatile float mGravityFilteringCoefficient;
+    private volatile float mMagneticFilteringCoefficient;
+    private volatile int mFilterMode = AugmentedRealityKernelInterface.FILTER_MODE_COEFFICIENT;
+    private volatile long mGravityFilterTimeConstant;
+    private volatile long mMagneticFilterTimeConstant;
+
+    AccelerometerMagnetometerEngine(
+            final SensorManager sensor_manager,
+            final ARMarkersSurface.SharedVector rotation_data,
+            final ARMarkersSurface.SharedVector angular_velocity_data,
+            final AtomicInteger sensor_status,
+            final float gravity_filtering_coefficient,
+            final float magnetic_filtering_coefficient
+    ){
+        super(sensor_manager, rotation_data, angular_velocity_data, sensor_status);
+        mGravityFilteringCoefficient = gravity_filtering_coefficient;
+        mMagneticFilteringCoefficient = magnetic_filtering_coefficient;
+    }
+
+    void setGravityFilteringCoefficient(final float coefficient){
+        mGravityFilteringCoefficient = coefficient;
+    }
+
+    void setMagneticFilteringCoefficient(final float coefficient){
+        mMagneticFilteringCoefficient = coefficient;
+    }
+
+    void setFilterMode(final int mode){
+        mFilterMode = mode;
+    }
+
+    void setGravityFilterTimeConstant(final long time_constant){
+        mGravityFilterTimeConstant = time_constant;
+    }
+
+    void setMagneticFilterTimeConstant(final long time_constant){
+        mMagneticFilterTimeConstant = time_constant;
+    }
+
+    @Override
+    boolean start(final Handler handler, final int sampling_period, final int max_report_latency) {
+        publishSensorStatus(getMissingDataStatus(false, false));
+
+        register(getGravitySensor(), handler, sampling_period, max_report_latency);
+        register(getMagneticFieldSensor(), handler, sampling_period, max_report_latency);
+
+        return true;
+    }
+
+    @Override
+    public void onSensorChanged(final SensorEvent event) {
+        onSensorChanged(event.sensor.getType(), event.values, event.timestamp);
+    }
+
+    // Split from onSensorChanged so tests can feed events without a Sensor, which only Android can create.
+    void onSensorChanged(final int type, final float[] values, final long timestamp) {
+        final boolean time_constant_mode = mFilterMode == AugmentedRealityKernelInterface.FILTER_MODE_TIME_CONSTANT;
+
+        if (type == Sensor.TYPE_GRAVITY || type == Sensor.TYPE_ACCELEROMETER) {
+            if (time_constant_mode) {
+                mGravity.filterWithTimeConstant(values, timestamp, mGravityFilterTimeConstant);
+            } else {
+                mGravity.filter(values, timestamp, mGravityFilteringCoefficient);
+            }
+        } else if (type == Sensor.TYPE_MAGNETIC_FIELD) {
+            if (time_constant_mode) {
+                mMagneticField.filterWithTimeConstant(values, timestamp, mMagneticFilterTimeConstant);
+            } else {
+                mMagneticField.filter(values, timestamp, mMagneticFilteringCoefficient);
+            }
+        } else {
+            return;
+        }
+
+        publishSensorStatus(getMissingDataStatus(mGravity.isInitialized(), mMagneticField.isInitialized()));
+
+        if (
+                mGravity.isInitialized() &&
+                mMagneticField.isInitialized() &&
+                SensorManager.getRotationMatrix(mRotation, null, mGravity.getValue(), mMagneticField.getValue())
+        ) {
+            publishRotation(mRotation, timestamp);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package augmented_reality.surfaces;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+// Paces the drawer thread to the display vsync, through frame callbacks posted to the main thread.
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+class ChoreographerFrameSource implements FrameSource, Choreographer.FrameCallback {
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Object mLock = new Object();
+    private long mFrameTime = 0;
+    private long mLastFrameTime = 0;
+    private boolean mReleased = false;
+
+    private final Runnable mRequestFrame = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (mLock) {
+                if (mReleased) {
+                    return;
+                }
+            }
+            Choreographer.getInstance().postFrameCallback(ChoreographerFrameSource.this);
+        }
+    };
+
+    private final Runnable mRemoveFrameCallback = new Runnable() {
+        @Override
+        public void run() {
+            Choreographer.getInstance().removeFrameCallback(ChoreographerFrameSource.this);
+        }
+    };
+
+    @Override
+    public long awaitFrame() throws InterruptedException {
+        mHandler.post(mRequestFrame);
+
+        synchronized (mLock) {
+            while (mFrameTime == mLastFrameTime) {
+                mLock.wait();
+            }
+            mLastFrameTime = mFrameTime;
+            return mFrameTime;
+        }
+    }
+
+    @Override
+    public void doFrame(final long frame_time_nanos) {
+        synchronized (mLock) {
+            mFrameTime = frame_time_nanos;
+            mLock.notifyAll();
+        }
+    }
+
+    @Override
+    public void release() {
+        synchronized (mLock) {
+            mReleased = true;
+        }
+        mHandler.removeCallbacks(mRequestFrame);
+        mHandler.post(mRemoveFrameCallback);
+    }
+}
@@ -0,0 +1,143 @@
+package augmented_reality.surfaces;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorManager;
+import android.os.Handler;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Integrates the gyroscope, slowly pulled towards the accelerometer/magnetometer orientation to cancel the drift.
+class ComplementaryFilterEngine extends OrientationEngine {
+
+    // Time constant, in seconds, of the drift correction towards the accelerometer/magnetometer orientation.
+    private static final float CORRECTION_TIME_CONSTANT = 0.5f;
+    private static final float NANOSECONDS_TO_SECONDS = 1.0e-9f;
+
+    private final float[] mGravity = new float[3];
+    private final float[] mMagneticField = new float[3];
+    private final float[] mRotation = new float[9];
+    private final float[] mMeasuredQuaternion = new float[4];
+    private final float[] mQuaternion = new float[4];
+    private final float[] mTemp = new float[4];
+    private boolean mGravityReceived = false;
+    private boolean mMagneticFieldReceived = false;
+    private boolean mMeasuredQuaternionOK = false;
+    private boolean mInitialized = false;
+    private long mLastGyroscopeTimestamp = 0;
+
+    ComplementaryFilterEngine(
+            final SensorManager sensor_manager,
+            final ARMarkersSurface.SharedVector rotation_data,
+            final ARMarkersSurface.SharedVector angular_velocity_data,
+            final AtomicInteger sensor_status
+    ){
+        super(sensor_manager, rotation_data, angular_velocity_data, sensor_status);
+    }
+
+    @Override
+    boolean start(final Handler handler, final int sampling_period, final int max_report_latency) {
+        final Sensor gyroscope = mSensorManager.getDefaultSensor(Sensor.TYPE_GYROSCOPE);
+        if(gyroscope == null){
+            return false;
+        }
+
+        publishSensorStatus(getMissingDataStatus(false, false));
+
+        register(getGravitySensor(), handler, sampling_period, max_report_latency);
+        register(getMagneticFieldSensor(), handler, sampling_period, max_report_latency);
+        register(gyroscope, handler, sampling_period, max_report_latency);
+
+        return true;
+    }
+
+    @Override
+    public void onSensorChanged(final SensorEvent event) {
+        final int type = event.sensor.getType();
+
+        if (type == Sensor.TYPE_GRAVITY || type == Sensor.TYPE_ACCELEROMETER) {
+            filter(mGravity, event.values, 0.0f);
+            mGravityReceived = true;
+            updateMeasuredQuaternion(event.timestamp);
+        } else if (type == Sensor.TYPE_MAGNETIC_FIELD) {
+            filter(mMagneticField, event.values, 0.0f);
+            mMagneticFieldReceived = true;
+            updateMeasuredQuaternion(event.timestamp);
+        } else if (type == Sensor.TYPE_GYROSCOPE) {
+            integrateGyroscope(event.values, event.timestamp);
+        }
+    }
+
+    private void updateMeasuredQuaternion(final long timestamp){
+        publishSensorStatus(getMissingDataStatus(mGravityReceived, mMagneticFieldReceived));
+
+        if (
+                mGravityReceived &&
+                mMagneticFieldReceived &&
+                SensorManager.getRotationMatrix(mRotation, null, mGravity, mMagneticField)
+        ) {
+            quaternionFromRotationMatrix(mRotation, mMeasuredQuaternion);
+            mMeasuredQuaternionOK = true;
+
+            if (!mInitialized) {
+                System.arraycopy(mMeasuredQuaternion, 0, mQuaternion, 0, 4);
+                mInitialized = true;
+                publishRotation(mRotation, timestamp);
+            }
+        }
+    }
+
+    private void integrateGyroscope(final float[] angular_velocity, final long timestamp){
+        final long last_timestamp = mLastGyroscopeTimestamp;
+        mLastGyroscopeTimestamp = timestamp;
+
+        if (!mInitialized || last_timestamp == 0) {
+            return;
+        }
+
+        final float dt = (timestamp - last_timestamp) * NANOSECONDS_TO_SECONDS;
+        if (dt <= 0.0f) {
+            return;
+        }
+
+        // q = q * dq, where dq is the rotation by the angular velocity (device frame) during dt.
+        final float wx = angular_velocity[0];
+        final float wy = angular_velocity[1];
+        final float wz = angular_velocity[2];
+        final float magnitude = (float) Math.sqrt(wx*wx + wy*wy + wz*wz);
+
+        if (magnitude > 1.0e-6f) {
+            final float half_angle = magnitude * dt / 2.0f;
+            final float sine = (float) Math.sin(half_angle) / magnitude;
+            final float dx = wx * sine;
+            final float dy = wy * sine;
+            final float dz = wz * sine;
+            final float dw = (float) Math.cos(half_angle);
+
+            final float x = mQuaternion[0], y = mQuaternion[1], z = mQuaternion[2], w = mQuaternion[3];
+            mTemp[0] = w*dx + x*dw + y*dz - z*dy;
+            mTemp[1] = w*dy - x*dz + y*dw + z*dx;
+            mTemp[2] = w*dz + x*dy - y*dx + z*dw;
+            mTemp[3] = w*dw - x*dx - y*dy - z*dz;
+            System.arraycopy(mTemp, 0, mQuaternion, 0, 4);
+        }
+
+        if (mMeasuredQuaternionOK) {
+            final float alpha = dt / (CORRECTION_TIME_CONSTANT + dt);
+            final float dot =
+                    mQuaternion[0]*mMeasuredQuaternion[0] +
+                    mQuaternion[1]*mMeasuredQuaternion[1] +
+                    mQuaternion[2]*mMeasuredQuaternion[2] +
+                    mQuaternion[3]*mMeasuredQuaternion[3];
+            final float sign = dot < 0.0f ? -1.0f : 1.0f;
+
+            for (int i = 0; i < 4; i++) {
+                mQuaternion[i] = mQuaternion[i] * (1.0f - alpha) + sign * mMeasuredQuaternion[i] * alpha;
+            }
+        }
+
+        normalizeQuaternion(mQuaternion);
+        rotationMatrixFromQuaternion(mQuaternion, mRotation);
+        publishRotation(mRotation, timestamp, angular_velocity);
+    }
+}
@@ -0,0 +1,27 @@
+package augmented_reality.surfaces;
+
+import augmented_reality.kernel.CullingStatistics;
+
+// Culling counters written by the render thread, read from any thread through snapshot.
+class CullingCounters {
+    private long mFrame;
+    private int mTotal;
+    private int mVisited;
+    private int mVisible;
+    private int mDrawn;
+
+    synchronized void update(final int total, final int visited, final int visible){
+        mFrame++;
+        mTotal = total;
+        mVisited = visited;
+        mVisible = visible;
+    }
+
+    synchronized void setDrawn(final int drawn){
+        mDrawn = drawn;
+    }
+
+    synchronized CullingStatistics snapshot(){
+        return new CullingStatistics(mFrame, mTotal, mVisited, mVisible, mDrawn);
+    }
+}
@@ -0,0 +1,278 @@
+package augmented_reality.surfaces;
+
+import java.util.Arrays;
+
+import augmented_reality.kernel.AugmentedRealityKernelInterface;
+import augmented_reality.markers.Marker;
+
+// Hides, stacks or aggregates overlapping markers by decreasing priority, finding collisions through a screen grid.
+class Declutterer {
+
+    private static final float CELL_SIZE = 64.0f;
+    private static final int MAX_STACK_ATTEMPTS = 4;
+    private static final long INDEX_MASK = 0xFFFFFFFFL;
+
+    private int mColumns;
+    private int mRows;
+    private int[] mCellHeads = new int[0];
+    private int[] mNodeNext = new int[0];
+    private int[] mNodeItem = new int[0];
+    private int mNodeCount;
+    private long[] mOrder = new long[0];
+    private boolean[] mKeep = new boolean[0];
+    private int[] mVisited = new int[0];
+    private int[] mLayers = new int[0];
+    private int[] mBatchKeys = new int[0];
+    private int mVisitStamp = 0;
+
+    void declutter(final FrameSnapshot snapshot, final int mode, final int width, final int height){
+        final int count = snapshot.getCount();
+
+        if (mode == AugmentedRealityKernelInterface.DECLUTTER_NONE || count < 2 || width <= 0 || height <= 0) {
+            return;
+        }
+
+        prepare(count, width, height);
+
+        final float[] bounds = snapshot.getBounds();
+
+        for (int i = 0; i < count; i++) {
+            final Marker marker = snapshot.getMarker(i);
+            // Descending priority, then descending index, as one ascending unsigned key.
+            final long priority = ~(marker.getPriority() ^ Integer.MIN_VALUE) & INDEX_MASK;
+            mOrder[i] = priority << 32 | (~i & INDEX_MASK);
+        }
+        Arrays.sort(mOrder, 0, count);
+
+        for (int k = 0; k < count; k++) {
+            final int i = (int) ~(mOrder[k] & INDEX_MASK);
+            final int offset = 4 * i;
+
+            if (bounds[offset] >= bounds[offset + 2] || bounds[offset + 1] >= bounds[offset + 3]) {
+                mKeep[i] = true;
+                continue;
+            }
+
+            int owner = findCollision(bounds, i);
+
+            if (owner < 0) {
+                place(bounds, i);
+                mKeep[i] = true;
+                continue;
+            }
+
+            switch (mode) {
+                case AugmentedRealityKernelInterface.DECLUTTER_STACK:
+                    mKeep[i] = stack(snapshot, bounds, i, owner);
+                    break;
+                case AugmentedRealityKernelInterface.DECLUTTER_AGGREGATE:
+                    snapshot.addAggregated(owner, 1 + snapshot.getAggregated(i));
+                    mKeep[i] = false;
+                    break;
+                default:
+                    mKeep[i] = false;
+                    break;
+            }
+        }
+
+        snapshot.compact(mKeep);
+    }
+
+    // Groups the markers by Marker.getBatchKey without changing the picture: a marker is only moved past markers it
+    // does not overlap or that share its key, and never past a marker without bounds.
+    void sortByBatchKey(final FrameSnapshot snapshot, final int width, final int height){
+        final int count = snapshot.getCount();
+
+        if (count < 2 || width <= 0 || height <= 0) {
+            return;
+        }
+
+        prepare(count, width, height);
+
+        boolean sorted = true;
+        for (int i = 0; i < count; i++) {
+            mBatchKeys[i] = snapshot.getMarker(i).getBatchKey();
+            sorted = sorted && (i == 0 || mBatchKeys[i] >= mBatchKeys[i - 1]);
+        }
+        if (sorted) {
+            return;
+        }
+
+        final float[] bounds = snapshot.getBounds();
+        int floor = 0;
+        int top = 0;
+
+        for (int i = 0; i < count; i++) {
+            final int offset = 4 * i;
+
+            if (bounds[offset] >= bounds[offset + 2] || bounds[offset + 1] >= bounds[offset + 3]) {
+                mLayers[i] = i == 0 ? 0 : top + 1;
+                floor = mLayers[i] + 1;
+            } else {
+                mLayers[i] = findLayer(bounds, i, floor);
+                place(bounds, i);
+            }
+            top = Math.max(top, mLayers[i]);
+        }
+
+        snapshot.sortByBatchKey(mLayers, top + 1);
+    }
+
+    private void prepare(final int count, final int width, final int height){
+        mColumns = (int) Math.ceil(width / CELL_SIZE);
+        mRows = (int) Math.ceil(height / CELL_SIZE);
+        final int cells = mColumns * mRows;
+
+        if (mCellHeads.length < cells) {
+            mCellHeads = new int[cells];
+        }
+        Arrays.fill(mCellHeads, 0, cells, -1);
+
+        if (mOrder.length < count) {
+            mOrder = new long[count];
+            mKeep = new boolean[count];
+            mVisited = new int[count];
+            mLayers = new int[count];
+            mBatchKeys = new int[count];
+        }
+        Arrays.fill(mKeep, 0, count, false);
+        Arrays.fill(mVisited, 0, count, 0);
+        mVisitStamp = 0;
+        mNodeCount = 0;
+    }
+
+    // Tries to move the marker above the owner, then above whatever it hits next, a few times before giving up.
+    private boolean stack(final FrameSnapshot snapshot, final float[] bounds, final int i, int owner){
+        final int offset = 4 * i;
+
+        for (int attempt = 0; attempt < MAX_STACK_ATTEMPTS && owner >= 0; attempt++) {
+            final float dy = bounds[4 * owner + 1] - bounds[offset + 3];
+            if (bounds[offset + 1] + dy < 0.0f) {
+                return false;
+            }
+            snapshot.offset(i, 0.0f, dy);
+            owner = findCollision(bounds, i);
+        }
+
+        if (owner >= 0) {
+            return false;
+        }
+
+        place(bounds, i);
+        return true;
+    }
+
+    // Returns a placed marker overlapping the bounds of marker i, or -1.
+    private int findCollision(final float[] bounds, final int i){
+        final int offset = 4 * i;
+        final float left = bounds[offset];
+        final float top = bounds[offset + 1];
+        final float right = bounds[offset + 2];
+        final float bottom = bounds[offset + 3];
+
+        final int first_column = clampColumn(left);
+        final int last_column = clampColumn(right);
+        final int first_row = clampRow(top);
+        final int last_row = clampRow(bottom);
+
+        mVisitStamp++;
+
+        for (int row = first_row; row <= last_row; row++) {
+            for (int column = first_column; column <= last_column; column++) {
+                for (int node = mCellHeads[row * mColumns + column]; node >= 0; node = mNodeNext[node]) {
+                    final int other = mNodeItem[node];
+
+                    if (mVisited[other] == mVisitStamp) {
+                        continue;
+                    }
+                    mVisited[other] = mVisitStamp;
+
+                    final int other_offset = 4 * other;
+                    if (
+                            left < bounds[other_offset + 2] &&
+                            right > bounds[other_offset] &&
+                            top < bounds[other_offset + 3] &&
+                            bottom > bounds[other_offset + 1]
+                    ) {
+                        return other;
+                    }
+                }
+            }
+        }
+
+        return -1;
+    }
+
+    // Lowest layer keeping marker i above the placed markers it overlaps, sharing the layer of those with its key.
+    private int findLayer(final float[] bounds, final int i, final int floor){
+        final int offset = 4 * i;
+        final float left = bounds[offset];
+        final float top = bounds[offset + 1];
+        final float right = bounds[offset + 2];
+        final float bottom = bounds[offset + 3];
+
+        final int first_column = clampColumn(left);
+        final int last_column = clampColumn(right);
+        final int first_row = clampRow(top);
+        final int last_row = clampRow(bottom);
+
+        int layer = floor;
+        mVisitStamp++;
+
+        for (int row = first_row; row <= last_row; row++) {
+            for (int column = first_column; column <= last_column; column++) {
+                for (int node = mCellHeads[row * mColumns + column]; node >= 0; node = mNodeNext[node]) {
+                    final int other = mNodeItem[node];
+
+                    if (mVisited[other] == mVisitStamp) {
+                        continue;
+                    }
+                    mVisited[other] = mVisitStamp;
+
+                    final int other_offset = 4 * other;
+                    if (
+                            left < bounds[other_offset + 2] &&
+                            right > bounds[other_offset] &&
+                            top < bounds[other_offset + 3] &&
+                            bottom > bounds[other_offset + 1]
+                    ) {
+                        layer = Math.max(layer, mLayers[other] + (mBatchKeys[other] == mBatchKeys[i] ? 0 : 1));
+                    }
+                }
+            }
+        }
+
+        return layer;
+    }
+
+    private void place(final float[] bounds, final int i){
+        final int offset = 4 * i;
+        final int first_column = clampColumn(bounds[offset]);
+        final int last_column = clampColumn(bounds[offset + 2]);
+        final int first_row = clampRow(bounds[offset + 1]);
+        final int last_row = clampRow(bounds[offset + 3]);
+
+        for (int row = first_row; row <= last_row; row++) {
+            for (int column = first_column; column <= last_column; column++) {
+                if (mNodeCount == mNodeItem.length) {
+                    final int capacity = Math.max(16, 2 * mNodeCount);
+                    mNodeItem = Arrays.copyOf(mNodeItem, capacity);
+                    mNodeNext = Arrays.copyOf(mNodeNext, capacity);
+                }
+                final int cell = row * mColumns + column;
+                mNodeItem[mNodeCount] = i;
+                mNodeNext[mNodeCount] = mCellHeads[cell];
+                mCellHeads[cell] = mNodeCount;
+                mNodeCount++;
+            }
+        }
+    }
+
+    private int clampColumn(final float x){
+        return Math.max(0, Math.min(mColumns - 1, (int) (x / CELL_SIZE)));
+    }
+
+    private int clampRow(final float y){
+        return Math.max(0, Math.min(mRows - 1, (int) (y / CELL_SIZE)));
+    }
+}
@@ -2,12 +2,15 @@ package augmented_reality.surfaces;
 
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.Paint;
 import android.graphics.PorterDuff;
+import android.graphics.RectF;
 import android.view.SurfaceHolder;
 
 import java.lang.ref.WeakReference;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.Arrays;
 
+import augmented_reality.kernel.AugmentedRealityKernelInterface;
 import augmented_reality.parameters.ParameterManager;
 import augmented_reality.markers.Marker;
 import augmented_reality.markers.MarkerManager;
@@ -16,28 +19,125 @@ import static augmented_reality.parameters.ParameterNames.*;
 
 class DrawerThread extends Thread{
 
+    private static final int BADGE_COLOR = 0xFFD32F2F;
+    private static final float BADGE_TEXT_SIZE = 24.0f;
+
     private final WeakReference<SurfaceHolder> mSurfaceHolder;
     private final WeakReference<MarkerManager> mMarkersManager;
     private final ParameterManager<String> mParameters;
+    private final FrameSnapshotBuffer mFrameSnapshots;
+    private final CullingCounters mCullingCounters;
+    private final RectF mBounds = new RectF();
+    private final Object mParallelProjectionThresholdCallbackId;
+    private volatile int mParallelProjectionThreshold;
+    private ParallelProjector mParallelProjector;
+    private boolean[] mProjected = new boolean[0];
+    private float[] mProjectedBounds = new float[0];
+    private final Object mDeclutterModeCallbackId;
+    private volatile int mDeclutterMode;
+    private final Declutterer mDeclutterer = new Declutterer();
+    private final Paint mBadgePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mBadgeTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private String[] mBadgeLabels = new String[0];
+    private final int mRenderer;
+    private GLMarkerRenderer mGLRenderer;
     private final Object mSleepTimeCallbackId;
-    private final AtomicLong mSleepTime = new AtomicLong();
+    private final Object mFrameSchedulerModeCallbackId;
+    private final Object mTargetFrameRateCallbackId;
+    private final Object mFrameSkippingEnabledCallbackId;
+    private final FrameScheduler mFrameScheduler;
+    private final Object mMaxMarkerDistanceCallbackId;
+    private volatile float mMaxMarkerDistance;
 
     DrawerThread(
             final MarkerManager marker_manager,
             final SurfaceHolder holder,
-            final ParameterManager<String> parameters
+            final ParameterManager<String> parameters,
+            final FrameSnapshotBuffer frame_snapshots,
+            final CullingCounters culling_counters
     ){
         mMarkersManager = new WeakReference<>(marker_manager);
         mSurfaceHolder = new WeakReference<>(holder);
         mParameters = parameters;
+        mFrameSnapshots = frame_snapshots;
+        mCullingCounters = culling_counters;
+
+        mRenderer = (Integer) mParameters.getParameter(RENDERER);
 
-        mSleepTime.set((Long) mParameters.getParameter(SLEEP_TIME_BETWEEN_FRAMES));
+        mFrameScheduler = new FrameScheduler(
+                (Integer) mParameters.getParameter(FRAME_SCHEDULER_MODE),
+                (Long) mParameters.getParameter(SLEEP_TIME_BETWEEN_FRAMES),
+                (Float) mParameters.getParameter(TARGET_FRAME_RATE)
+        );
 
         mSleepTimeCallbackId =
             mParameters.registerCallback(SLEEP_TIME_BETWEEN_FRAMES,new ParameterManager.DataChangedCallback() {
                 @Override
                 public void onDataChanged(Object key, Object data, Object old_data) {
-                    mSleepTime.set((Long) data);
+                    mFrameScheduler.setSleepTime((Long) data);
+                }
+            });
+
+        mFrameSchedulerModeCallbackId =
+            mParameters.registerCallback(FRAME_SCHEDULER_MODE,new ParameterManager.DataChangedCallback() {
+                @Override
+                public void onDataChanged(Object key, Object data, Object old_data) {
+                    mFrameScheduler.setMode((Integer) data);
+                }
+            });
+
+        mTargetFrameRateCallbackId =
+            mParameters.registerCallback(TARGET_FRAME_RATE,new ParameterManager.DataChangedCallback() {
+                @Override
+                public void onDataChanged(Object key, Object data, Object old_data) {
+                    mFrameScheduler.setTargetFrameRate((Float) data);
+                }
+            });
+
+        mFrameScheduler.setSkippingEnabled((Boolean) mParameters.getParameter(FRAME_SKIPPING_ENABLED));
+
+        mFrameSkippingEnabledCallbackId =
+            mParameters.registerCallback(FRAME_SKIPPING_ENABLED,new ParameterManager.DataChangedCallback() {
+                @Override
+                public void onDataChanged(Object key, Object data, Object old_data) {
+                    mFrameScheduler.setSkippingEnabled((Boolean) data);
+                }
+            });
+
+        mParallelProjectionThreshold = (Integer) mParameters.getParameter(PARALLEL_PROJECTION_THRESHOLD);
+
+        mParallelProjectionThresholdCallbackId =
+            mParameters.registerCallback(PARALLEL_PROJECTION_THRESHOLD,new ParameterManager.DataChangedCallback() {
+                @Override
+                public void onDataChanged(Object key, Object data, Object old_data) {
+                    mParallelProjectionThreshold = (Integer) data;
+                }
+            });
+
+        mDeclutterMode = (Integer) mParameters.getParameter(DECLUTTER_MODE);
+
+        mDeclutterModeCallbackId =
+            mParameters.registerCallback(DECLUTTER_MODE,new ParameterManager.DataChangedCallback() {
+                @Override
+                public void onDataChanged(Object key, Object data, Object old_data) {
+                    mDeclutterMode = (Integer) data;
+                    requestRender();
+                }
+            });
+
+        mBadgePaint.setColor(BADGE_COLOR);
+        mBadgeTextPaint.setColor(Color.WHITE);
+        mBadgeTextPaint.setTextSize(BADGE_TEXT_SIZE);
+        mBadgeTextPaint.setTextAlign(Paint.Align.CENTER);
+
+        mMaxMarkerDistance = (Float) mParameters.getParameter(MAX_MARKER_DISTANCE);
+
+        mMaxMarkerDistanceCallbackId =
+            mParameters.registerCallback(MAX_MARKER_DISTANCE,new ParameterManager.DataChangedCallback() {
+                @Override
+                public void onDataChanged(Object key, Object data, Object old_data) {
+                    mMaxMarkerDistance = (Float) data;
+                    requestRender();
                 }
             });
     }
@@ -45,10 +145,18 @@ class DrawerThread extends Thread{
     @Override
     public void run(){
 
-        Marker[] markers = new Marker[0];
+        Marker[] visible_markers = new Marker[0];
 
         try {
 
+            if (mRenderer == AugmentedRealityKernelInterface.RENDERER_GL && mSurfaceHolder.get() != null) {
+                mGLRenderer = new GLMarkerRenderer();
+                // Without OpenGL ES 2.0 on this surface, the canvas is used instead.
+                if (!mGLRenderer.start(mSurfaceHolder.get())) {
+                    mGLRenderer = null;
+                }
+            }
+
             while (!isInterrupted()) {
 
                 final MarkerManager marker_manager = mMarkersManager.get();
@@ -58,39 +166,173 @@ class DrawerThread extends Thread{
                     return;
                 }
 
-                markers = marker_manager.getMarkerArray(markers);
+                try {
+                    mFrameScheduler.awaitFrame();
+                } catch (InterruptedException ignored) {
+                    return;
+                }
+
+                final Marker[] markers = marker_manager.getMarkerArray();
+
+                if(!mFrameScheduler.shouldDraw(marker_manager.updateARTransform())){
+                    continue;
+                }
 
-                Canvas canvas = surface_holder.lockCanvas();
+                Canvas canvas = lockCanvas(surface_holder);
 
                 if (canvas != null) {
 
-                    canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+                    if(visible_markers.length < markers.length){
+                        visible_markers = new Marker[markers.length];
+                    }
+                    final int visible_count = marker_manager.cullMarkers(markers, visible_markers, mMaxMarkerDistance);
 
-                    marker_manager.updateARTransform();
+                    final FrameSnapshot snapshot = project(visible_markers, visible_count);
+                    mDeclutterer.declutter(snapshot, mDeclutterMode, canvas.getWidth(), canvas.getHeight());
+                    mDeclutterer.sortByBatchKey(snapshot, canvas.getWidth(), canvas.getHeight());
 
-                    for (Marker m : markers) {
+                    for (int i=0; i<snapshot.getCount(); i++) {
                         canvas.save();
-                        m.onDraw(canvas);
+                        canvas.translate(snapshot.getOffsetX(i), snapshot.getOffsetY(i));
+                        snapshot.getMarker(i).onDraw(canvas);
                         canvas.restore();
+                        if (snapshot.getAggregated(i) > 0) {
+                            drawBadge(canvas, snapshot, i);
+                        }
                     }
 
-                    surface_holder.unlockCanvasAndPost(canvas);
-                } else {
-                    return;
-                }
+                    mCullingCounters.setDrawn(snapshot.getCount());
 
-                try {
-                    sleep(mSleepTime.get());
-                } catch (InterruptedException ignored) {
+                    if (!unlockCanvasAndPost(surface_holder, canvas)) {
+                        return;
+                    }
+                    mFrameSnapshots.publish();
+                    mFrameScheduler.onFrameDrawn();
+                } else {
                     return;
                 }
             }
         }
         finally {
+            // Nothing is on screen anymore, so nothing can be touched.
+            mFrameSnapshots.getBackSnapshot().reset(0);
+            mFrameSnapshots.publish();
             if(mMarkersManager.get() != null) {
                 mMarkersManager.get().stopListeningToParameters();
             }
+            mFrameScheduler.release();
+            if(mGLRenderer != null) {
+                mGLRenderer.release();
+                mGLRenderer = null;
+            }
+            if(mParallelProjector != null) {
+                mParallelProjector.release();
+            }
+            mParameters.removeCallback(DECLUTTER_MODE,mDeclutterModeCallbackId);
+            mParameters.removeCallback(PARALLEL_PROJECTION_THRESHOLD,mParallelProjectionThresholdCallbackId);
             mParameters.removeCallback(SLEEP_TIME_BETWEEN_FRAMES,mSleepTimeCallbackId);
+            mParameters.removeCallback(FRAME_SCHEDULER_MODE,mFrameSchedulerModeCallbackId);
+            mParameters.removeCallback(TARGET_FRAME_RATE,mTargetFrameRateCallbackId);
+            mParameters.removeCallback(FRAME_SKIPPING_ENABLED,mFrameSkippingEnabledCallbackId);
+            mParameters.removeCallback(MAX_MARKER_DISTANCE,mMaxMarkerDistanceCallbackId);
+        }
+    }
+
+    private void requestRender(){
+        final MarkerManager marker_manager = mMarkersManager.get();
+        if (marker_manager != null) {
+            marker_manager.requestRender();
+        }
+    }
+
+    // Returns a cleared canvas for this frame, drawing through OpenGL ES when the GL renderer is in use.
+    private Canvas lockCanvas(final SurfaceHolder surface_holder){
+        if (mGLRenderer != null) {
+            return mGLRenderer.beginFrame();
+        }
+
+        final Canvas canvas = surface_holder.lockCanvas();
+        if (canvas != null) {
+            canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
         }
+        return canvas;
+    }
+
+    // Returns false if the frame could not be posted because the surface is gone.
+    private boolean unlockCanvasAndPost(final SurfaceHolder surface_holder, final Canvas canvas){
+        if (mGLRenderer != null) {
+            return mGLRenderer.endFrame();
+        }
+
+        surface_holder.unlockCanvasAndPost(canvas);
+        return true;
+    }
+
+    // Markers that are not on screen are left out of the snapshot, so they are neither drawn nor hit tested.
+
+    private FrameSnapshot project(final Marker[] visible_markers, final int visible_count){
+        final FrameSnapshot snapshot = mFrameSnapshots.getBackSnapshot();
+        snapshot.reset(visible_count);
+
+        final int threshold = mParallelProjectionThreshold;
+
+        if (threshold > 0 && visible_count >= threshold) {
+            if (mParallelProjector == null) {
+                mParallelProjector = ParallelProjector.create();
+            }
+
+            if (mParallelProjector != null) {
+                if (mProjected.length < visible_count) {
+                    mProjected = new boolean[visible_count];
+                    mProjectedBounds = new float[4 * visible_count];
+                }
+
+                mParallelProjector.project(visible_markers, visible_count, mProjected, mProjectedBounds);
+
+                for (int i=0; i<visible_count; i++) {
+                    if (mProjected[i]) {
+                        snapshot.add(visible_markers[i], mProjectedBounds, 4 * i);
+                    }
+                }
+
+                return snapshot;
+            }
+        }
+
+        for (int i=0; i<visible_count; i++) {
+            mBounds.setEmpty();
+            if (visible_markers[i].onProject(mBounds)) {
+                snapshot.add(visible_markers[i], mBounds);
+            }
+        }
+
+        return snapshot;
+    }
+
+    // Labels are built once per count, so a steady scene does not allocate.
+    private void drawBadge(final Canvas canvas, final FrameSnapshot snapshot, final int index){
+        final int count = snapshot.getAggregated(index);
+        if (mBadgeLabels.length <= count) {
+            mBadgeLabels = Arrays.copyOf(mBadgeLabels, Math.max(16, 2 * count));
+        }
+        if (mBadgeLabels[count] == null) {
+            mBadgeLabels[count] = "+" + count;
+        }
+
+        final float[] bounds = snapshot.getBounds();
+        final float x = bounds[4 * index + 2];
+        final float y = bounds[4 * index + 1];
+        final float radius = 0.5f * Math.max(
+                mBadgeTextPaint.descent() - mBadgeTextPaint.ascent(),
+                mBadgeTextPaint.measureText(mBadgeLabels[count])
+        ) + 4.0f;
+
+        canvas.drawCircle(x, y, radius, mBadgePaint);
+        canvas.drawText(
+                mBadgeLabels[count],
+                x,
+                y - 0.5f * (mBadgeTextPaint.ascent() + mBadgeTextPaint.descent()),
+                mBadgeTextPaint
+        );
     }
 }
@@ -0,0 +1,126 @@
+package augmented_reality.surfaces;
+
+import android.os.Build;
+
+import augmented_reality.kernel.AugmentedRealityKernelInterface;
+
+// Paces the drawer thread by sleeping or by display frames, capped at the target frame rate, and skips frames whose
+// inputs did not change (see Marker.invalidate) for up to MAX_TIME_BETWEEN_FRAMES.
+class FrameScheduler {
+
+    private static final long DISPLAY_FRAME_PERIOD = 1000000000L / 60L;
+    private static final long MAX_TIME_BETWEEN_FRAMES = 1000000000L;
+    // Minimum sleep after a skipped frame in the sleep mode, so a zero sleep time does not turn into a busy loop.
+    private static final long SKIPPED_FRAME_SLEEP_TIME = 4L;
+
+    private volatile int mMode;
+    private volatile long mSleepTime;
+    private volatile float mTargetFrameRate;
+    private volatile boolean mSkippingEnabled = true;
+    // Display frame source to use instead of the platform one, null for the platform one.
+    private final FrameSource mDisplayFrameSource;
+    private FrameSource mFrameSource;
+    private long mFrameTime;
+    private long mLastDrawnFrameTime;
+    private boolean mDrawnOnce = false;
+    private boolean mLastFrameSkipped = false;
+
+    FrameScheduler(final int mode, final long sleep_time, final float target_frame_rate){
+        this(mode, sleep_time, target_frame_rate, null);
+    }
+
+    FrameScheduler(
+            final int mode,
+            final long sleep_time,
+            final float target_frame_rate,
+            final FrameSource display_frame_source
+    ){
+        mMode = mode;
+        mSleepTime = sleep_time;
+        mTargetFrameRate = target_frame_rate;
+        mDisplayFrameSource = display_frame_source;
+    }
+
+    void setMode(final int mode){
+        mMode = mode;
+    }
+
+    void setSleepTime(final long sleep_time){
+        mSleepTime = sleep_time;
+    }
+
+    void setTargetFrameRate(final float target_frame_rate){
+        mTargetFrameRate = target_frame_rate;
+    }
+
+    void setSkippingEnabled(final boolean enabled){
+        mSkippingEnabled = enabled;
+    }
+
+    // Blocks until the next frame may start.
+    void awaitFrame() throws InterruptedException {
+        final float target_frame_rate = mTargetFrameRate;
+        final long min_frame_interval = target_frame_rate > 0.0f ? (long) (1000000000L / target_frame_rate) : 0L;
+
+        if(mMode != AugmentedRealityKernelInterface.FRAME_SCHEDULER_VSYNC){
+            releaseFrameSource();
+            if(mDrawnOnce) {
+                Thread.sleep(mLastFrameSkipped ? Math.max(mSleepTime, SKIPPED_FRAME_SLEEP_TIME) : mSleepTime);
+
+                // The sleep time is counted from the end of the frame, the cap from its start.
+                final long wait = mLastDrawnFrameTime + min_frame_interval - System.nanoTime();
+                if(wait > 0) {
+                    Thread.sleep(wait / 1000000L, (int) (wait % 1000000L));
+                }
+            }
+            mFrameTime = System.nanoTime();
+            return;
+        }
+
+        if(mFrameSource == null){
+            if(mDisplayFrameSource != null){
+                mFrameSource = mDisplayFrameSource;
+            }
+            else if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN){
+                mFrameSource = new ChoreographerFrameSource();
+            }
+            else{
+                mFrameSource = new TimerFrameSource(DISPLAY_FRAME_PERIOD);
+            }
+        }
+
+        do{
+            mFrameTime = mFrameSource.awaitFrame();
+        }
+        // Half a display frame of tolerance, otherwise vsync jitter would make a 30fps cap skip to 20fps.
+        while(mDrawnOnce && mFrameTime - mLastDrawnFrameTime < min_frame_interval - DISPLAY_FRAME_PERIOD / 2);
+    }
+
+    // changed tells whether the scene inputs changed since the last drawn frame.
+    boolean shouldDraw(final boolean scene_changed){
+        final boolean draw =
+                !mDrawnOnce ||
+                !mSkippingEnabled ||
+                scene_changed ||
+                mFrameTime - mLastDrawnFrameTime >= MAX_TIME_BETWEEN_FRAMES;
+
+        mLastFrameSkipped = !draw;
+        return draw;
+    }
+
+    void onFrameDrawn(){
+        mLastDrawnFrameTime = mFrameTime;
+        mDrawnOnce = true;
+    }
+
+    void release(){
+        releaseFrameSource();
+    }
+
+    private void releaseFrameSource(){
+        if(mFrameSource != null){
+            mFrameSource.release();
+            mFrameSource = null;
+        }
+    }
+}
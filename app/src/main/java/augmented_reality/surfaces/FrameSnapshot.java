@@ -0,0 +1,193 @@
+package augmented_reality.surfaces;
+
+import android.graphics.RectF;
+
+import java.util.Arrays;
+
+import augmented_reality.markers.Marker;
+
+// The markers of one frame in drawing order, with their bounds, declutter offsets and aggregated counts.
+
+class FrameSnapshot {
+
+    private Marker[] mMarkers = new Marker[0];
+    private float[] mBounds = new float[0];
+    private float[] mOffsets = new float[0];
+    private int[] mAggregated = new int[0];
+    private int mCount = 0;
+    private long[] mSortKeys = new long[0];
+    private int[] mSortedIndices = new int[0];
+    private int[] mLayerStarts = new int[0];
+    private Marker[] mSortedMarkers = new Marker[0];
+    private float[] mSortedBounds = new float[0];
+    private float[] mSortedOffsets = new float[0];
+    private int[] mSortedAggregated = new int[0];
+
+    void reset(final int capacity){
+        // Drop the references of the previous use, so removed markers are not kept alive by a stale buffer.
+        for (int i = 0; i < mCount; i++) {
+            mMarkers[i] = null;
+        }
+        mCount = 0;
+
+        if (mMarkers.length < capacity) {
+            mMarkers = new Marker[capacity];
+            mBounds = new float[4 * capacity];
+            mOffsets = new float[2 * capacity];
+            mAggregated = new int[capacity];
+        }
+    }
+
+    void add(final Marker marker, final RectF bounds){
+        final int offset = 4 * mCount;
+        mMarkers[mCount] = marker;
+        mBounds[offset] = bounds.left;
+        mBounds[offset + 1] = bounds.top;
+        mBounds[offset + 2] = bounds.right;
+        mBounds[offset + 3] = bounds.bottom;
+        clearDeclutter(mCount);
+        mCount++;
+    }
+
+    void add(final Marker marker, final float[] bounds, final int offset){
+        final int snapshot_offset = 4 * mCount;
+        mMarkers[mCount] = marker;
+        System.arraycopy(bounds, offset, mBounds, snapshot_offset, 4);
+        clearDeclutter(mCount);
+        mCount++;
+    }
+
+    private void clearDeclutter(final int index){
+        mOffsets[2 * index] = 0.0f;
+        mOffsets[2 * index + 1] = 0.0f;
+        mAggregated[index] = 0;
+    }
+
+    float[] getBounds(){
+        return mBounds;
+    }
+
+    float getOffsetX(final int index){
+        return mOffsets[2 * index];
+    }
+
+    float getOffsetY(final int index){
+        return mOffsets[2 * index + 1];
+    }
+
+    int getAggregated(final int index){
+        return mAggregated[index];
+    }
+
+    // Moves an entry by dx, dy, keeping its bounds in sync so hit-testing matches what is drawn.
+    void offset(final int index, final float dx, final float dy){
+        mOffsets[2 * index] += dx;
+        mOffsets[2 * index + 1] += dy;
+        mBounds[4 * index] += dx;
+        mBounds[4 * index + 1] += dy;
+        mBounds[4 * index + 2] += dx;
+        mBounds[4 * index + 3] += dy;
+    }
+
+    void addAggregated(final int index, final int count){
+        mAggregated[index] += count;
+    }
+
+    // Drops the entries not flagged in keep, preserving the drawing order of the others.
+    void compact(final boolean[] keep){
+        int kept = 0;
+        for (int i = 0; i < mCount; i++) {
+            if (keep[i]) {
+                if (kept != i) {
+                    mMarkers[kept] = mMarkers[i];
+                    System.arraycopy(mBounds, 4 * i, mBounds, 4 * kept, 4);
+                    mOffsets[2 * kept] = mOffsets[2 * i];
+                    mOffsets[2 * kept + 1] = mOffsets[2 * i + 1];
+                    mAggregated[kept] = mAggregated[i];
+                }
+                kept++;
+            }
+        }
+        for (int i = kept; i < mCount; i++) {
+            mMarkers[i] = null;
+        }
+        mCount = kept;
+    }
+
+    // Reorders the entries by layer, then by Marker.getBatchKey, then by drawing order.
+
+    void sortByBatchKey(final int[] layers, final int layer_count){
+        if (mSortKeys.length < mCount) {
+            mSortKeys = new long[mMarkers.length];
+            mSortedIndices = new int[mMarkers.length];
+            mSortedMarkers = new Marker[mMarkers.length];
+            mSortedBounds = new float[mBounds.length];
+            mSortedOffsets = new float[mOffsets.length];
+            mSortedAggregated = new int[mAggregated.length];
+        }
+        if (mLayerStarts.length < layer_count + 1) {
+            mLayerStarts = new int[Math.max(layer_count + 1, mMarkers.length + 1)];
+        }
+
+        for (int i = 0; i < mCount; i++) {
+            mSortKeys[i] = (long) (mMarkers[i].getBatchKey() ^ Integer.MIN_VALUE) << 32 | i;
+        }
+        Arrays.sort(mSortKeys, 0, mCount);
+
+        // Stable counting sort of the key order by layer.
+        Arrays.fill(mLayerStarts, 0, layer_count + 1, 0);
+        for (int i = 0; i < mCount; i++) {
+            mLayerStarts[layers[i] + 1]++;
+        }
+        for (int layer = 0; layer < layer_count; layer++) {
+            mLayerStarts[layer + 1] += mLayerStarts[layer];
+        }
+        for (int k = 0; k < mCount; k++) {
+            final int i = (int) mSortKeys[k];
+            mSortedIndices[mLayerStarts[layers[i]]++] = i;
+        }
+
+        for (int k = 0; k < mCount; k++) {
+            final int i = mSortedIndices[k];
+            mSortedMarkers[k] = mMarkers[i];
+            System.arraycopy(mBounds, 4 * i, mSortedBounds, 4 * k, 4);
+            mSortedOffsets[2 * k] = mOffsets[2 * i];
+            mSortedOffsets[2 * k + 1] = mOffsets[2 * i + 1];
+            mSortedAggregated[k] = mAggregated[i];
+        }
+
+        System.arraycopy(mSortedMarkers, 0, mMarkers, 0, mCount);
+        System.arraycopy(mSortedBounds, 0, mBounds, 0, 4 * mCount);
+        System.arraycopy(mSortedOffsets, 0, mOffsets, 0, 2 * mCount);
+        System.arraycopy(mSortedAggregated, 0, mAggregated, 0, mCount);
+        Arrays.fill(mSortedMarkers, 0, mCount, null);
+    }
+
+    int getCount(){
+        return mCount;
+    }
+
+    Marker getMarker(final int index){
+        return mMarkers[index];
+    }
+
+    // The topmost marker, the last drawn, wins. Markers without bounds are asked through Marker.touched.
+    Marker hitTest(final float x, final float y){
+        for (int i = mCount - 1; i >= 0; i--) {
+            final int offset = 4 * i;
+            final float left = mBounds[offset];
+            final float top = mBounds[offset + 1];
+            final float right = mBounds[offset + 2];
+            final float bottom = mBounds[offset + 3];
+
+            if (left >= right || top >= bottom) {
+                if (mMarkers[i].touched(x, y)) {
+                    return mMarkers[i];
+                }
+            } else if (x >= left && x <= right && y >= top && y <= bottom) {
+                return mMarkers[i];
+            }
+        }
+        return null;
+    }
+}
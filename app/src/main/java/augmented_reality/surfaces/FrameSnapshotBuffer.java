@@ -0,0 +1,38 @@
+package augmented_reality.surfaces;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import augmented_reality.markers.Marker;
+
+// Lock free triple buffer of frame snapshots from the render thread to the readers.
+class FrameSnapshotBuffer {
+
+    private static final int INDEX_MASK = 0x3;
+    private static final int FRESH_BIT = 0x4;
+
+    private final FrameSnapshot[] mSnapshots = {new FrameSnapshot(), new FrameSnapshot(), new FrameSnapshot()};
+    private final AtomicInteger mMiddle = new AtomicInteger(1);
+    private int mBack = 0;
+    private int mFront = 2;
+    private final Object mReaderLock = new Object();
+
+    // Render thread only.
+    FrameSnapshot getBackSnapshot(){
+        return mSnapshots[mBack];
+    }
+
+    // Render thread only. The back snapshot becomes the latest one and must not be touched anymore.
+    void publish(){
+        mBack = mMiddle.getAndSet(mBack | FRESH_BIT) & INDEX_MASK;
+    }
+
+    // Hit tests the latest published snapshot. Readers are serialized among themselves, never with the render thread.
+    Marker hitTest(final float x, final float y){
+        synchronized (mReaderLock) {
+            if ((mMiddle.get() & FRESH_BIT) != 0) {
+                mFront = mMiddle.getAndSet(mFront) & INDEX_MASK;
+            }
+            return mSnapshots[mFront].hitTest(x, y);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package augmented_reality.surfaces;
+
+// Source of display frame ticks for the drawer thread.
+interface FrameSource {
+
+    // Returns the frame time, in System.nanoTime nanoseconds.
+    long awaitFrame() throws InterruptedException;
+
+    void release();
+}
@@ -0,0 +1,375 @@
+package augmented_reality.surfaces;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.opengl.GLES20;
+import android.opengl.GLUtils;
+import android.view.SurfaceHolder;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.egl.EGLContext;
+import javax.microedition.khronos.egl.EGLDisplay;
+import javax.microedition.khronos.egl.EGLSurface;
+
+// OpenGL ES 2.0 backend of the render thread, one draw call per QuadBatcher batch. Non bitmap draws go to a full
+// screen overlay, uploaded on each frame it is drawn on and always composited above the quads.
+class GLMarkerRenderer implements QuadBatcher.Sink {
+
+    private static final int EGL_OPENGL_ES2_BIT = 4;
+    private static final int EGL_CONTEXT_CLIENT_VERSION = 0x3098;
+
+    private static final int BATCH_QUADS = 1024;
+    // Textures not used for this many frames are deleted.
+    private static final int TEXTURE_MAX_IDLE_FRAMES = 120;
+
+    private static final String VERTEX_SHADER =
+            "uniform vec2 uScreenSize;\n" +
+            "attribute vec2 aPosition;\n" +
+            "attribute vec2 aTexCoord;\n" +
+            "attribute float aAlpha;\n" +
+            "varying vec2 vTexCoord;\n" +
+            "varying float vAlpha;\n" +
+            "void main() {\n" +
+            "    vTexCoord = aTexCoord;\n" +
+            "    vAlpha = aAlpha;\n" +
+            "    gl_Position = vec4(\n" +
+            "            2.0 * aPosition.x / uScreenSize.x - 1.0,\n" +
+            "            1.0 - 2.0 * aPosition.y / uScreenSize.y,\n" +
+            "            0.0,\n" +
+            "            1.0\n" +
+            "    );\n" +
+            "}\n";
+
+    // Bitmaps are uploaded with premultiplied alpha.
+    private static final String FRAGMENT_SHADER =
+            "precision mediump float;\n" +
+            "uniform sampler2D uTexture;\n" +
+            "varying vec2 vTexCoord;\n" +
+            "varying float vAlpha;\n" +
+            "void main() {\n" +
+            "    gl_FragColor = texture2D(uTexture, vTexCoord) * vAlpha;\n" +
+            "}\n";
+
+    private static final class Texture {
+        final int mId;
+        int mGeneration;
+        long mLastFrame;
+
+        Texture(final int id){
+            mId = id;
+        }
+    }
+
+    private EGL10 mEgl;
+    private EGLDisplay mDisplay = EGL10.EGL_NO_DISPLAY;
+    private EGLContext mContext = EGL10.EGL_NO_CONTEXT;
+    private EGLSurface mSurface = EGL10.EGL_NO_SURFACE;
+
+    private int mProgram;
+    private int mPositionLocation;
+    private int mTexCoordLocation;
+    private int mAlphaLocation;
+
+    private final QuadBatcher mBatcher = new QuadBatcher(this, BATCH_QUADS);
+    private final IdentityHashMap<Bitmap, Texture> mTextures = new IdentityHashMap<>();
+    private final int[] mTextureId = new int[1];
+    private FloatBuffer mVertexBuffer;
+    private ShortBuffer mIndexBuffer;
+    private Bitmap mOverlay;
+    private QuadCanvas mCanvas;
+    private int mOverlayGeneration;
+    private final float[] mIdentity = {1.0f, 0.0f, 0.0f, 1.0f, 0.0f, 0.0f};
+    private long mFrame;
+
+    // Returns false, having released whatever it created, if OpenGL ES 2.0 cannot be used on this surface.
+    boolean start(final SurfaceHolder holder){
+        final Rect frame = holder.getSurfaceFrame();
+        final int width = frame.right - frame.left;
+        final int height = frame.bottom - frame.top;
+
+        if (width <= 0 || height <= 0 || !createContext(holder) || !createProgram()) {
+            release();
+            return false;
+        }
+
+        mVertexBuffer = ByteBuffer
+                .allocateDirect(4 * BATCH_QUADS * QuadBatcher.VERTICES_PER_QUAD * QuadBatcher.FLOATS_PER_VERTEX)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+        final short[] indices = QuadBatcher.createIndices(mBatcher.getMaxQuads());
+        mIndexBuffer = ByteBuffer
+                .allocateDirect(2 * indices.length)
+                .order(ByteOrder.nativeOrder())
+                .asShortBuffer();
+        mIndexBuffer.put(indices).position(0);
+
+        mOverlay = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        mOverlayGeneration = mOverlay.getGenerationId();
+        mCanvas = new QuadCanvas(mOverlay, mBatcher);
+
+        GLES20.glViewport(0, 0, width, height);
+        GLES20.glEnable(GLES20.GL_BLEND);
+        GLES20.glBlendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+        GLES20.glUseProgram(mProgram);
+        GLES20.glUniform2f(GLES20.glGetUniformLocation(mProgram, "uScreenSize"), width, height);
+        GLES20.glUniform1i(GLES20.glGetUniformLocation(mProgram, "uTexture"), 0);
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glEnableVertexAttribArray(mPositionLocation);
+        GLES20.glEnableVertexAttribArray(mTexCoordLocation);
+        GLES20.glEnableVertexAttribArray(mAlphaLocation);
+
+        return true;
+    }
+
+    private boolean createContext(final SurfaceHolder holder){
+        mEgl = (EGL10) EGLContext.getEGL();
+
+        mDisplay = mEgl.eglGetDisplay(EGL10.EGL_DEFAULT_DISPLAY);
+        if (mDisplay == EGL10.EGL_NO_DISPLAY || !mEgl.eglInitialize(mDisplay, new int[2])) {
+            mDisplay = EGL10.EGL_NO_DISPLAY;
+            return false;
+        }
+
+        final int[] config_attributes = {
+                EGL10.EGL_RED_SIZE, 8,
+                EGL10.EGL_GREEN_SIZE, 8,
+                EGL10.EGL_BLUE_SIZE, 8,
+                EGL10.EGL_ALPHA_SIZE, 8,
+                EGL10.EGL_RENDERABLE_TYPE, EGL_OPENGL_ES2_BIT,
+                EGL10.EGL_SURFACE_TYPE, EGL10.EGL_WINDOW_BIT,
+                EGL10.EGL_NONE
+        };
+        final EGLConfig[] configs = new EGLConfig[1];
+        final int[] config_count = new int[1];
+        if (!mEgl.eglChooseConfig(mDisplay, config_attributes, configs, 1, config_count) || config_count[0] == 0) {
+            return false;
+        }
+
+        mContext = mEgl.eglCreateContext(
+                mDisplay,
+                configs[0],
+                EGL10.EGL_NO_CONTEXT,
+                new int[]{EGL_CONTEXT_CLIENT_VERSION, 2, EGL10.EGL_NONE}
+        );
+        if (mContext == null || mContext == EGL10.EGL_NO_CONTEXT) {
+            mContext = EGL10.EGL_NO_CONTEXT;
+            return false;
+        }
+
+        mSurface = mEgl.eglCreateWindowSurface(mDisplay, configs[0], holder, null);
+        if (mSurface == null || mSurface == EGL10.EGL_NO_SURFACE) {
+            mSurface = EGL10.EGL_NO_SURFACE;
+            return false;
+        }
+
+        return mEgl.eglMakeCurrent(mDisplay, mSurface, mSurface, mContext);
+    }
+
+    private boolean createProgram(){
+        final int vertex_shader = compileShader(GLES20.GL_VERTEX_SHADER, VERTEX_SHADER);
+        final int fragment_shader = compileShader(GLES20.GL_FRAGMENT_SHADER, FRAGMENT_SHADER);
+
+        if (vertex_shader == 0 || fragment_shader == 0) {
+            GLES20.glDeleteShader(vertex_shader);
+            GLES20.glDeleteShader(fragment_shader);
+            return false;
+        }
+
+        mProgram = GLES20.glCreateProgram();
+        GLES20.glAttachShader(mProgram, vertex_shader);
+        GLES20.glAttachShader(mProgram, fragment_shader);
+        GLES20.glLinkProgram(mProgram);
+        GLES20.glDeleteShader(vertex_shader);
+        GLES20.glDeleteShader(fragment_shader);
+
+        final int[] status = new int[1];
+        GLES20.glGetProgramiv(mProgram, GLES20.GL_LINK_STATUS, status, 0);
+        if (status[0] == 0) {
+            GLES20.glDeleteProgram(mProgram);
+            mProgram = 0;
+            return false;
+        }
+
+        mPositionLocation = GLES20.glGetAttribLocation(mProgram, "aPosition");
+        mTexCoordLocation = GLES20.glGetAttribLocation(mProgram, "aTexCoord");
+        mAlphaLocation = GLES20.glGetAttribLocation(mProgram, "aAlpha");
+
+        return true;
+    }
+
+    private static int compileShader(final int type, final String source){
+        final int shader = GLES20.glCreateShader(type);
+        GLES20.glShaderSource(shader, source);
+        GLES20.glCompileShader(shader);
+
+        final int[] status = new int[1];
+        GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, status, 0);
+        if (status[0] == 0) {
+            GLES20.glDeleteShader(shader);
+            return 0;
+        }
+
+        return shader;
+    }
+
+    // Returns the canvas the markers of this frame draw on.
+    Canvas beginFrame(){
+        mFrame++;
+
+        GLES20.glClearColor(0.0f, 0.0f, 0.0f, 0.0f);
+        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+
+        // The overlay is only cleared if the last frame drew on it.
+        if (mOverlay.getGenerationId() != mOverlayGeneration) {
+            mOverlay.eraseColor(0);
+            mOverlayGeneration = mOverlay.getGenerationId();
+        }
+
+        mCanvas.beginFrame();
+
+        return mCanvas;
+    }
+
+    // Draws the remaining quads, then the overlay if it was drawn on. Returns false if the surface is gone.
+
+    boolean endFrame(){
+        if (mOverlay.getGenerationId() != mOverlayGeneration) {
+            mBatcher.add(
+                    mOverlay,
+                    0.0f,
+                    0.0f,
+                    mOverlay.getWidth(),
+                    mOverlay.getHeight(),
+                    0.0f,
+                    0.0f,
+                    1.0f,
+                    1.0f,
+                    1.0f,
+                    mIdentity,
+                    0
+            );
+        }
+        mBatcher.flush();
+
+        if (mFrame % TEXTURE_MAX_IDLE_FRAMES == 0) {
+            deleteIdleTextures();
+        }
+
+        return mEgl.eglSwapBuffers(mDisplay, mSurface);
+    }
+
+    @Override
+    public void drawQuads(final Object texture, final float[] vertices, final int quad_count){
+        bindTexture((Bitmap) texture);
+
+        mVertexBuffer.clear();
+        mVertexBuffer.put(vertices, 0, quad_count * QuadBatcher.VERTICES_PER_QUAD * QuadBatcher.FLOATS_PER_VERTEX);
+
+        final int stride = 4 * QuadBatcher.FLOATS_PER_VERTEX;
+        mVertexBuffer.position(0);
+        GLES20.glVertexAttribPointer(mPositionLocation, 2, GLES20.GL_FLOAT, false, stride, mVertexBuffer);
+        mVertexBuffer.position(2);
+        GLES20.glVertexAttribPointer(mTexCoordLocation, 2, GLES20.GL_FLOAT, false, stride, mVertexBuffer);
+        mVertexBuffer.position(4);
+        GLES20.glVertexAttribPointer(mAlphaLocation, 1, GLES20.GL_FLOAT, false, stride, mVertexBuffer);
+
+        mIndexBuffer.position(0);
+        GLES20.glDrawElements(
+                GLES20.GL_TRIANGLES,
+                quad_count * QuadBatcher.INDICES_PER_QUAD,
+                GLES20.GL_UNSIGNED_SHORT,
+                mIndexBuffer
+        );
+    }
+
+    private void bindTexture(final Bitmap bitmap){
+        Texture texture = mTextures.get(bitmap);
+
+        if (texture == null) {
+            GLES20.glGenTextures(1, mTextureId, 0);
+            texture = new Texture(mTextureId[0]);
+            texture.mGeneration = bitmap.getGenerationId() - 1;
+            mTextures.put(bitmap, texture);
+
+            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture.mId);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        }
+        else {
+            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture.mId);
+        }
+
+        final int generation = bitmap.getGenerationId();
+        if (texture.mGeneration != generation) {
+            GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
+            texture.mGeneration = generation;
+        }
+
+        texture.mLastFrame = mFrame;
+    }
+
+    private void deleteIdleTextures(){
+        final Iterator<Map.Entry<Bitmap, Texture>> entries = mTextures.entrySet().iterator();
+
+        while (entries.hasNext()) {
+            final Map.Entry<Bitmap, Texture> entry = entries.next();
+
+            if (entry.getKey().isRecycled() || mFrame - entry.getValue().mLastFrame > TEXTURE_MAX_IDLE_FRAMES) {
+                mTextureId[0] = entry.getValue().mId;
+                GLES20.glDeleteTextures(1, mTextureId, 0);
+                entries.remove();
+            }
+        }
+    }
+
+    void release(){
+        if (mEgl == null) {
+            return;
+        }
+
+        if (mContext != EGL10.EGL_NO_CONTEXT && mSurface != EGL10.EGL_NO_SURFACE) {
+            for (final Texture texture : mTextures.values()) {
+                mTextureId[0] = texture.mId;
+                GLES20.glDeleteTextures(1, mTextureId, 0);
+            }
+            if (mProgram != 0) {
+                GLES20.glDeleteProgram(mProgram);
+            }
+        }
+        mTextures.clear();
+        mProgram = 0;
+
+        if (mDisplay != EGL10.EGL_NO_DISPLAY) {
+            mEgl.eglMakeCurrent(mDisplay, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_CONTEXT);
+            if (mSurface != EGL10.EGL_NO_SURFACE) {
+                mEgl.eglDestroySurface(mDisplay, mSurface);
+            }
+            if (mContext != EGL10.EGL_NO_CONTEXT) {
+                mEgl.eglDestroyContext(mDisplay, mContext);
+            }
+            mEgl.eglTerminate(mDisplay);
+        }
+        mSurface = EGL10.EGL_NO_SURFACE;
+        mContext = EGL10.EGL_NO_CONTEXT;
+        mDisplay = EGL10.EGL_NO_DISPLAY;
+        mEgl = null;
+
+        if (mOverlay != null) {
+            mOverlay.recycle();
+            mOverlay = null;
+        }
+        mCanvas = null;
+    }
+}
@@ -0,0 +1,67 @@
+package augmented_reality.surfaces;
+
+import android.hardware.GeomagneticField;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Declination evaluated once per coarse cell of latitude, longitude, altitude and time; it varies far less than the
+// compass noise across a cell.
+
+class GeomagneticCache {
+
+    private static final double CELL_SIZE_DEGREES = 0.1;
+    private static final double CELL_SIZE_METERS = 1000.0;
+    private static final long TIME_BUCKET_MILLISECONDS = 30L * 24L * 60L * 60L * 1000L;
+    private static final int MAX_FIELDS = 16;
+
+    private final LinkedHashMap<Long, Float> mDeclinations = new LinkedHashMap<Long, Float>(MAX_FIELDS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Float> eldest) {
+            return size() > MAX_FIELDS;
+        }
+    };
+    private long mLastKey = -1;
+    private float mLastDeclination;
+
+    // Declination in degrees, NaN if the model could not be evaluated.
+    float getDeclination(final double latitude, final double longitude, final double altitude, final long time){
+        if (Double.isNaN(latitude) || Double.isNaN(longitude)) {
+            return Float.NaN;
+        }
+
+        final long key = getKey(latitude, longitude, altitude, time);
+
+        if (key == mLastKey) {
+            return mLastDeclination;
+        }
+
+        Float declination = mDeclinations.get(key);
+
+        if (declination == null) {
+            final GeomagneticField model =
+                    new GeomagneticField(
+                            (float) latitude,
+                            (float) longitude,
+                            (float) altitude,
+                            time
+                    );
+            declination = model.getDeclination();
+            mDeclinations.put(key, declination);
+        }
+
+        mLastKey = key;
+        mLastDeclination = declination;
+        return declination;
+    }
+
+    // 11 bits of latitude, 12 of longitude, 11 of altitude and 29 of time bucket.
+    private static long getKey(final double latitude, final double longitude, final double altitude, final long time){
+        final long latitude_cell = (long) Math.floor((latitude + 90.0) / CELL_SIZE_DEGREES) & 0x7FF;
+        final long longitude_cell = (long) Math.floor((longitude + 180.0) / CELL_SIZE_DEGREES) & 0xFFF;
+        final long altitude_cell = ((long) Math.floor(altitude / CELL_SIZE_METERS) + 1024) & 0x7FF;
+        final long time_bucket = (time / TIME_BUCKET_MILLISECONDS) & 0x1FFFFFFF;
+
+        return latitude_cell | longitude_cell << 11 | altitude_cell << 23 | time_bucket << 34;
+    }
+}
@@ -0,0 +1,50 @@
+package augmented_reality.surfaces;
+
+// Exponential smoothing of a 3-vector, by a per-sample coefficient or by a time constant independent of the event rate.
+class LowPassFilter {
+
+    private static final float NANOSECONDS_PER_MILLISECOND = 1.0e6f;
+
+    private final float[] mValue = new float[3];
+    private long mLastTimestamp;
+    private boolean mInitialized = false;
+
+    float[] getValue(){
+        return mValue;
+    }
+
+    boolean isInitialized(){
+        return mInitialized;
+    }
+
+    // The coefficient is the weight of the previous value.
+    void filter(final float[] new_data, final long timestamp, final float coefficient){
+        apply(new_data, mInitialized ? coefficient : 0.0f);
+        mLastTimestamp = timestamp;
+        mInitialized = true;
+    }
+
+    // Decays the previous value by exp(-dt/time_constant), in nanoseconds. Samples with no elapsed time have no weight.
+
+    void filterWithTimeConstant(final float[] new_data, final long timestamp, final long time_constant){
+        float coefficient = 0.0f;
+
+        if (mInitialized && time_constant > 0) {
+            final long dt = timestamp - mLastTimestamp;
+            if (dt <= 0) {
+                return;
+            }
+            coefficient = (float) Math.exp(-dt / (time_constant * NANOSECONDS_PER_MILLISECOND));
+        }
+
+        apply(new_data, coefficient);
+        mLastTimestamp = timestamp;
+        mInitialized = true;
+    }
+
+    private void apply(final float[] new_data, final float coefficient){
+        mValue[0] = new_data[0] * (1.0f - coefficient) + mValue[0] * coefficient;
+        mValue[1] = new_data[1] * (1.0f - coefficient) + mValue[1] * coefficient;
+        mValue[2] = new_data[2] * (1.0f - coefficient) + mValue[2] * coefficient;
+    }
+}
@@ -0,0 +1,167 @@
+package augmented_reality.surfaces;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+import augmented_reality.interfaces.LocationToScreenCoordinatesTranslator;
+import augmented_reality.markers.ClusterMarker;
+import augmented_reality.markers.Marker;
+
+// Replaces far markers sharing a direction cell and a distance band by a ClusterMarker.
+class MarkerClusterer {
+
+    private final LocationToScreenCoordinatesTranslator mTranslator;
+    private final float[] mDirection = new float[4];
+
+    private volatile float mDistance;
+    private volatile float mCellAngle;
+    private volatile boolean mSettingsChanged = true;
+
+    private Marker[] mMarkers;
+    private int mFixId;
+    private Marker[] mClusteredMarkers = new Marker[0];
+    private long[] mKeys = new long[0];
+    // Bucket of each marker for the current fix and settings, so a marker set change only buckets the new markers.
+    private IdentityHashMap<Marker, Long> mKeyCache = new IdentityHashMap<>();
+    private HashMap<Long, ClusterMarker> mClusters = new HashMap<>();
+
+    MarkerClusterer(final LocationToScreenCoordinatesTranslator translator){
+        mTranslator = translator;
+    }
+
+    // Markers farther than distance (in meters) are clustered. 0 disables clustering.
+    void setDistance(final float distance){
+        mDistance = distance;
+        mSettingsChanged = true;
+    }
+
+    // Angular size of the clustering cells, in degrees.
+    void setCellAngle(final float angle){
+        mCellAngle = angle;
+        mSettingsChanged = true;
+    }
+
+    // A cluster takes the place of its first marker. The result is the same array until the markers or the fix change.
+
+    Marker[] update(final Marker[] markers, final int fix_id){
+        if(markers == mMarkers && fix_id == mFixId && !mSettingsChanged){
+            return mClusteredMarkers;
+        }
+
+        if(fix_id != mFixId || mSettingsChanged){
+            mKeyCache.clear();
+        }
+
+        mSettingsChanged = false;
+        mMarkers = markers;
+        mFixId = fix_id;
+
+        final float distance = mDistance;
+        final double cell_angle = mCellAngle * Math.PI / 180.0;
+
+        if(distance <= 0.0f || !(cell_angle > 0.0)){
+            mClusters.clear();
+            mKeyCache.clear();
+            mClusteredMarkers = markers;
+            return markers;
+        }
+
+        final int azimuth_cells = (int) Math.ceil(2.0 * Math.PI / cell_angle);
+        final int elevation_cells = (int) Math.ceil(Math.PI / cell_angle);
+        final int n = markers.length;
+
+        if(mKeys.length < n){
+            mKeys = new long[n];
+        }
+
+        final HashMap<Long, ArrayList<Marker>> groups = new HashMap<>();
+        final IdentityHashMap<Marker, Long> key_cache = new IdentityHashMap<>(n);
+
+        for(int i=0; i<n; i++){
+            Long key = mKeyCache.get(markers[i]);
+            if(key == null){
+                key = getKey(markers[i], distance, cell_angle, azimuth_cells, elevation_cells);
+            }
+            key_cache.put(markers[i], key);
+
+            mKeys[i] = key;
+            if(mKeys[i] < 0){
+                continue;
+            }
+
+            ArrayList<Marker> group = groups.get(mKeys[i]);
+            if(group == null){
+                group = new ArrayList<>();
+                groups.put(mKeys[i], group);
+            }
+            group.add(markers[i]);
+        }
+
+        final HashMap<Long, ClusterMarker> clusters = new HashMap<>();
+        final ArrayList<Marker> clustered_markers = new ArrayList<>(n);
+
+        for(int i=0; i<n; i++){
+            if(mKeys[i] < 0){
+                clustered_markers.add(markers[i]);
+                continue;
+            }
+
+            final ArrayList<Marker> group = groups.get(mKeys[i]);
+
+            if(group.size() == 1){
+                clustered_markers.add(markers[i]);
+            }
+            else if(group.get(0) == markers[i]){
+                final ClusterMarker cluster = getCluster(mKeys[i], group.toArray(new Marker[group.size()]));
+                clusters.put(mKeys[i], cluster);
+                clustered_markers.add(cluster);
+            }
+        }
+
+        mClusters = clusters;
+        mKeyCache = key_cache;
+        mClusteredMarkers = clustered_markers.toArray(new Marker[clustered_markers.size()]);
+
+        return mClusteredMarkers;
+    }
+
+    // Returns -1 for the markers that are not clustered.
+    private long getKey(
+            final Marker marker,
+            final float distance,
+            final double cell_angle,
+            final int azimuth_cells,
+            final int elevation_cells
+    ){
+        if(!marker.getLocalDirection(mDirection) || mDirection[3] <= distance){
+            return -1;
+        }
+
+        double azimuth = Math.atan2(mDirection[0], mDirection[1]);
+        if(azimuth < 0.0){
+            azimuth += 2.0 * Math.PI;
+        }
+        final double elevation = Math.asin(Math.max(-1.0f, Math.min(1.0f, mDirection[2])));
+
+        final long a = Math.min(azimuth_cells - 1, (int) (azimuth / cell_angle));
+        final long e = Math.min(elevation_cells - 1, (int) ((elevation + Math.PI / 2.0) / cell_angle));
+        final long band = (long) (Math.log(mDirection[3] / distance) / Math.log(2.0));
+
+        return band << 32 | e << 16 | a;
+    }
+
+    private ClusterMarker getCluster(final long key, final Marker[] members){
+        final ClusterMarker cluster = mClusters.get(key);
+
+        if(cluster != null && Arrays.equals(cluster.getMarkers(), members)){
+            return cluster;
+        }
+
+        final ClusterMarker new_cluster = new ClusterMarker("cluster_" + key, members);
+        new_cluster.SetTranslator(mTranslator);
+
+        return new_cluster;
+    }
+}
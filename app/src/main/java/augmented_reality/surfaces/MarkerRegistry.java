@@ -0,0 +1,147 @@
+package augmented_reality.surfaces;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import augmented_reality.markers.Marker;
+
+// Copy-on-write marker store: readers use the current immutable snapshot without locking, writers publish a new one.
+class MarkerRegistry {
+
+    static class Snapshot {
+        final Marker[] mMarkers;
+        final HashMap<String, Marker> mFirstMarkerById;
+        final int mVersion;
+
+        Snapshot(final Marker[] markers, final int version){
+            mMarkers = markers;
+            mVersion = version;
+            mFirstMarkerById = new HashMap<>(markers.length * 2);
+
+            for(final Marker marker : markers){
+                if(!mFirstMarkerById.containsKey(marker.getId())){
+                    mFirstMarkerById.put(marker.getId(), marker);
+                }
+            }
+        }
+    }
+
+    private final AtomicReference<Snapshot> mSnapshot = new AtomicReference<>(new Snapshot(new Marker[0], 0));
+
+    Snapshot getSnapshot(){
+        return mSnapshot.get();
+    }
+
+    synchronized void add(final Marker marker){
+        final Marker[] markers = mSnapshot.get().mMarkers;
+        final Marker[] new_markers = new Marker[markers.length + 1];
+        System.arraycopy(markers, 0, new_markers, 0, markers.length);
+        new_markers[markers.length] = marker;
+
+        mSnapshot.set(new Snapshot(new_markers, mSnapshot.get().mVersion + 1));
+    }
+
+    synchronized boolean remove(final Marker marker){
+        final Marker[] markers = mSnapshot.get().mMarkers;
+
+        for(int i=0; i<markers.length; i++){
+            if(markers[i].equals(marker)){
+                final Marker[] new_markers = new Marker[markers.length - 1];
+                System.arraycopy(markers, 0, new_markers, 0, i);
+                System.arraycopy(markers, i + 1, new_markers, i, markers.length - i - 1);
+
+                mSnapshot.set(new Snapshot(new_markers, mSnapshot.get().mVersion + 1));
+                notifyRemoved(markers, new_markers, new_markers.length);
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    synchronized void addAll(final Collection<? extends Marker> markers_to_add){
+        final Marker[] added = markers_to_add.toArray(new Marker[0]);
+        final Marker[] markers = mSnapshot.get().mMarkers;
+        final Marker[] new_markers = new Marker[markers.length + added.length];
+        System.arraycopy(markers, 0, new_markers, 0, markers.length);
+        System.arraycopy(added, 0, new_markers, markers.length, added.length);
+
+        mSnapshot.set(new Snapshot(new_markers, mSnapshot.get().mVersion + 1));
+    }
+
+    synchronized int removeAll(final Collection<? extends Marker> markers_to_remove){
+        final HashSet<Marker> set = new HashSet<>(markers_to_remove);
+        final Marker[] markers = mSnapshot.get().mMarkers;
+        final Marker[] new_markers = new Marker[markers.length];
+
+        int n = 0;
+        for(final Marker marker : markers){
+            if(!set.contains(marker)){
+                new_markers[n++] = marker;
+            }
+        }
+
+        return publishIfChanged(markers, new_markers, n);
+    }
+
+    synchronized int removeAllById(final Set<String> ids){
+        final Marker[] markers = mSnapshot.get().mMarkers;
+        final Marker[] new_markers = new Marker[markers.length];
+
+        int n = 0;
+        for(final Marker marker : markers){
+            if(!ids.contains(marker.getId())){
+                new_markers[n++] = marker;
+            }
+        }
+
+        return publishIfChanged(markers, new_markers, n);
+    }
+
+    synchronized void replaceAll(final Collection<? extends Marker> markers){
+        final Marker[] old_markers = mSnapshot.get().mMarkers;
+        final Marker[] new_markers = markers.toArray(new Marker[markers.size()]);
+
+        mSnapshot.set(new Snapshot(new_markers, mSnapshot.get().mVersion + 1));
+        notifyRemoved(old_markers, new_markers, new_markers.length);
+    }
+
+    private int publishIfChanged(final Marker[] markers, final Marker[] new_markers, final int n){
+        final int removed = markers.length - n;
+
+        if(removed > 0){
+            final Marker[] trimmed_markers = new Marker[n];
+            System.arraycopy(new_markers, 0, trimmed_markers, 0, n);
+            mSnapshot.set(new Snapshot(trimmed_markers, mSnapshot.get().mVersion + 1));
+            notifyRemoved(markers, trimmed_markers, n);
+        }
+
+        return removed;
+    }
+
+    synchronized void clear(){
+        final Marker[] markers = mSnapshot.get().mMarkers;
+
+        mSnapshot.set(new Snapshot(new Marker[0], mSnapshot.get().mVersion + 1));
+        notifyRemoved(markers, markers, 0);
+    }
+
+    // Calls onRemoved once on every marker of old_markers that is not among the first count of new_markers.
+    private static void notifyRemoved(final Marker[] old_markers, final Marker[] new_markers, final int count){
+        final IdentityHashMap<Marker, Boolean> kept = new IdentityHashMap<>(2 * count);
+        for(int i=0; i<count; i++){
+            kept.put(new_markers[i], Boolean.TRUE);
+        }
+
+        for(final Marker marker : old_markers){
+            // Putting the removed ones too, so a marker added twice is told once.
+            if(kept.put(marker, Boolean.TRUE) == null){
+                marker.onRemoved();
+            }
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package augmented_reality.surfaces;
+
+import java.util.Arrays;
+
+import augmented_reality.markers.Marker;
+
+// Buckets the markers in a grid of azimuth/elevation cells around the user, so each frame only the cells that
+// intersect the view cone are visited. The grid is rebuilt when the marker set or the location fix changes.
+class MarkerSpatialIndex {
+
+    private static final int AZIMUTH_CELLS = 36;
+    private static final int ELEVATION_CELLS = 18;
+    private static final int CELLS = AZIMUTH_CELLS * ELEVATION_CELLS;
+    private static final double AZIMUTH_CELL_SIZE = 2.0 * Math.PI / AZIMUTH_CELLS;
+    private static final double ELEVATION_CELL_SIZE = Math.PI / ELEVATION_CELLS;
+    // Largest angle between a cell center and any direction inside the cell.
+    private static final float CELL_RADIUS = (float) (Math.sqrt(2.0) * Math.max(AZIMUTH_CELL_SIZE, ELEVATION_CELL_SIZE) / 2.0);
+    // Markers are drawn around their anchor, so they are kept a bit beyond the edges of the screen.
+    private static final float CULLING_MARGIN = (float) (10.0 / 180.0 * Math.PI);
+
+    private final float[] mCellCenters = new float[3 * CELLS];
+    private final int[] mCellStart = new int[CELLS + 1];
+    private final int[] mCellFill = new int[CELLS];
+    private final float[] mDirection = new float[4];
+
+    private Marker[] mMarkers;
+    private int mFixId;
+    private float[] mDirections = new float[0];
+    private int[] mCells = new int[0];
+    private int[] mCellItems = new int[0];
+    private int[] mUnindexed = new int[0];
+    private int mUnindexedCount;
+
+    private int[] mVisible = new int[0];
+    private int mVisibleCount;
+    private int[] mLastVisible = new int[0];
+    private int mLastVisibleCount;
+    private int[] mVisibleFrame = new int[0];
+    private int mFrame;
+
+    MarkerSpatialIndex(){
+        for(int e=0; e<ELEVATION_CELLS; e++){
+            final double elevation = -Math.PI / 2.0 + (e + 0.5) * ELEVATION_CELL_SIZE;
+            for(int a=0; a<AZIMUTH_CELLS; a++){
+                final double azimuth = (a + 0.5) * AZIMUTH_CELL_SIZE;
+                final int cell = e * AZIMUTH_CELLS + a;
+                mCellCenters[3*cell] = (float) (Math.sin(azimuth) * Math.cos(elevation));
+                mCellCenters[3*cell+1] = (float) (Math.cos(azimuth) * Math.cos(elevation));
+                mCellCenters[3*cell+2] = (float) Math.sin(elevation);
+            }
+        }
+    }
+
+    private static int getCell(final float east, final float north, final float up){
+        double azimuth = Math.atan2(east, north);
+        if(azimuth < 0.0){
+            azimuth += 2.0 * Math.PI;
+        }
+        final double elevation = Math.asin(Math.max(-1.0f, Math.min(1.0f, up)));
+
+        final int a = Math.min(AZIMUTH_CELLS - 1, (int) (azimuth / AZIMUTH_CELL_SIZE));
+        final int e = Math.min(ELEVATION_CELLS - 1, (int) ((elevation + Math.PI / 2.0) / ELEVATION_CELL_SIZE));
+
+        return e * AZIMUTH_CELLS + a;
+    }
+
+    // Registry snapshots are immutable, so the array identity tells whether the marker set changed.
+
+    void update(final Marker[] markers, final int fix_id){
+        if(markers == mMarkers && fix_id == mFixId){
+            return;
+        }
+
+        hideAll();
+
+        mMarkers = markers;
+        mFixId = fix_id;
+
+        final int n = markers.length;
+        if(mCells.length < n){
+            mDirections = new float[4 * n];
+            mCells = new int[n];
+            mCellItems = new int[n];
+            mUnindexed = new int[n];
+            mVisible = new int[n];
+            mLastVisible = new int[n];
+            mVisibleFrame = new int[n];
+        }
+        Arrays.fill(mVisibleFrame, 0, n, 0);
+        mFrame = 0;
+
+        Arrays.fill(mCellStart, 0);
+        mUnindexedCount = 0;
+
+        for(int i=0; i<n; i++){
+            if(markers[i].getLocalDirection(mDirection)){
+                System.arraycopy(mDirection, 0, mDirections, 4*i, 4);
+                mCells[i] = getCell(mDirection[0], mDirection[1], mDirection[2]);
+                mCellStart[mCells[i] + 1]++;
+            }
+            else{
+                mCells[i] = -1;
+                mUnindexed[mUnindexedCount++] = i;
+            }
+        }
+
+        for(int c=0; c<CELLS; c++){
+            mCellStart[c + 1] += mCellStart[c];
+            mCellFill[c] = mCellStart[c];
+        }
+
+        for(int i=0; i<n; i++){
+            if(mCells[i] >= 0){
+                mCellItems[mCellFill[mCells[i]]++] = i;
+            }
+        }
+    }
+
+    // Writes the markers that may be visible into visible_markers, keeping their registry order, and returns how many.
+    int collect(
+            final float[] view_axis,
+            final float view_cone_half_angle,
+            final float max_distance,
+            final Marker[] visible_markers,
+            final CullingCounters statistics
+    ){
+        final float marker_limit = view_cone_half_angle + CULLING_MARGIN;
+        final float cell_limit = marker_limit + CELL_RADIUS;
+        final float marker_cosine = marker_limit >= Math.PI ? -2.0f : (float) Math.cos(marker_limit);
+        final float cell_cosine = cell_limit >= Math.PI ? -2.0f : (float) Math.cos(cell_limit);
+
+        int visited = mUnindexedCount;
+        mVisibleCount = 0;
+
+        for(int c=0; c<CELLS; c++){
+            if(mCellStart[c] == mCellStart[c + 1]){
+                continue;
+            }
+
+            final float cell_dot =
+                    mCellCenters[3*c] * view_axis[0] +
+                    mCellCenters[3*c+1] * view_axis[1] +
+                    mCellCenters[3*c+2] * view_axis[2];
+
+            if(cell_dot < cell_cosine){
+                continue;
+            }
+
+            for(int k=mCellStart[c]; k<mCellStart[c + 1]; k++){
+                final int i = mCellItems[k];
+                visited++;
+
+                final float dot =
+                        mDirections[4*i] * view_axis[0] +
+                        mDirections[4*i+1] * view_axis[1] +
+                        mDirections[4*i+2] * view_axis[2];
+                final float distance = mDirections[4*i+3];
+
+                if(dot >= marker_cosine && distance <= max_distance){
+                    mVisible[mVisibleCount++] = i;
+                }
+            }
+        }
+
+        System.arraycopy(mUnindexed, 0, mVisible, mVisibleCount, mUnindexedCount);
+        mVisibleCount += mUnindexedCount;
+        Arrays.sort(mVisible, 0, mVisibleCount);
+
+        mFrame++;
+        for(int k=0; k<mVisibleCount; k++){
+            visible_markers[k] = mMarkers[mVisible[k]];
+            mVisibleFrame[mVisible[k]] = mFrame;
+        }
+
+        for(int k=0; k<mLastVisibleCount; k++){
+            if(mVisibleFrame[mLastVisible[k]] != mFrame){
+                mMarkers[mLastVisible[k]].onHidden();
+            }
+        }
+
+        final int[] temp = mLastVisible;
+        mLastVisible = mVisible;
+        mLastVisibleCount = mVisibleCount;
+        mVisible = temp;
+
+        statistics.update(mMarkers.length, visited, mLastVisibleCount);
+
+        return mLastVisibleCount;
+    }
+
+    // Called when culling is not possible (no orientation or location yet): every marker is visible.
+    int collectAll(final Marker[] markers, final Marker[] visible_markers, final CullingCounters statistics){
+        hideAll();
+        mMarkers = null;
+
+        System.arraycopy(markers, 0, visible_markers, 0, markers.length);
+        statistics.update(markers.length, markers.length, markers.length);
+
+        return markers.length;
+    }
+
+    private void hideAll(){
+        if(mMarkers != null){
+            for(int k=0; k<mLastVisibleCount; k++){
+                mMarkers[mLastVisible[k]].onHidden();
+            }
+        }
+        mLastVisibleCount = 0;
+    }
+}
@@ -0,0 +1,92 @@
+package augmented_reality.surfaces;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.os.Build;
+import android.os.Handler;
+
+import augmented_reality.parameters.ParameterManager;
+import augmented_reality.parameters.ParameterNames;
+
+// Publishes DEVICE_STATIONARY once the gravity vector stayed close to its running average for a while.
+
+class MotionDetector implements SensorEventListener {
+
+    // Deviation of the gravity vector from its running average, in m/s^2, above which the device is moving.
+    private static final float MOTION_THRESHOLD = 0.25f;
+    private static final float AVERAGE_FILTER_COEFFICIENT = 0.9f;
+    private static final long STATIONARY_TIME = 2000000000L;
+    private static final int SAMPLING_PERIOD = SensorManager.SENSOR_DELAY_UI;
+    private static final int MAX_REPORT_LATENCY = 500000;
+
+    private final SensorManager mSensorManager;
+    private final ParameterManager<String> mParameters;
+    private final float[] mAverage = new float[3];
+    private boolean mAverageOK = false;
+    private long mLastMotionTimestamp = 0;
+    private boolean mStationary = false;
+
+    MotionDetector(final SensorManager sensor_manager, final ParameterManager<String> parameters){
+        mSensorManager = sensor_manager;
+        mParameters = parameters;
+    }
+
+    void start(final Handler handler){
+        Sensor gravity = mSensorManager.getDefaultSensor(Sensor.TYPE_GRAVITY);
+        if (gravity == null) {
+            gravity = mSensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
+        }
+        if (gravity == null) {
+            return;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            mSensorManager.registerListener(this, gravity, SAMPLING_PERIOD, MAX_REPORT_LATENCY, handler);
+        } else {
+            mSensorManager.registerListener(this, gravity, SAMPLING_PERIOD, handler);
+        }
+    }
+
+    void stop(){
+        mSensorManager.unregisterListener(this);
+        mAverageOK = false;
+        setStationary(false);
+    }
+
+    @Override
+    public void onSensorChanged(final SensorEvent event) {
+        final float[] values = event.values;
+
+        if (!mAverageOK) {
+            System.arraycopy(values, 0, mAverage, 0, 3);
+            mAverageOK = true;
+            mLastMotionTimestamp = event.timestamp;
+            return;
+        }
+
+        final float dx = values[0] - mAverage[0];
+        final float dy = values[1] - mAverage[1];
+        final float dz = values[2] - mAverage[2];
+
+        OrientationEngine.filter(mAverage, values, AVERAGE_FILTER_COEFFICIENT);
+
+        if (dx*dx + dy*dy + dz*dz > MOTION_THRESHOLD * MOTION_THRESHOLD) {
+            mLastMotionTimestamp = event.timestamp;
+            setStationary(false);
+        } else if (event.timestamp - mLastMotionTimestamp > STATIONARY_TIME) {
+            setStationary(true);
+        }
+    }
+
+    @Override
+    public void onAccuracyChanged(final Sensor sensor, final int accuracy) {
+    }
+
+    private void setStationary(final boolean stationary){
+        if (stationary != mStationary) {
+            mStationary = stationary;
+            mParameters.setParameter(ParameterNames.DEVICE_STATIONARY, stationary);
+        }
+    }
+}
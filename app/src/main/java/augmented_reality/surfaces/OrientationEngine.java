@@ -0,0 +1,185 @@
+package augmented_reality.surfaces;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.os.Build;
+import android.os.Handler;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import augmented_reality.interfaces.ARStatusInterface;
+
+// Turns sensor events, on the sensor thread, into the rotation matrix and world frame angular velocity (rad/s).
+abstract class OrientationEngine implements SensorEventListener {
+
+    // Weight of the previous estimate when smoothing the angular velocity differentiated from the rotations.
+    private static final float ANGULAR_VELOCITY_FILTER_COEFFICIENT = 0.5f;
+    private static final float NANOSECONDS_TO_SECONDS = 1.0e-9f;
+
+    protected final SensorManager mSensorManager;
+    private final ARMarkersSurface.SharedVector mRotationData;
+    private final ARMarkersSurface.SharedVector mAngularVelocityData;
+    private final AtomicInteger mSensorStatus;
+    private final float[] mLastRotation = new float[9];
+    private final float[] mAngularVelocity = new float[3];
+    private final float[] mMeasuredAngularVelocity = new float[3];
+    private long mLastRotationTimestamp = 0;
+
+    OrientationEngine(
+            final SensorManager sensor_manager,
+            final ARMarkersSurface.SharedVector rotation_data,
+            final ARMarkersSurface.SharedVector angular_velocity_data,
+            final AtomicInteger sensor_status
+    ){
+        mSensorManager = sensor_manager;
+        mRotationData = rotation_data;
+        mAngularVelocityData = angular_velocity_data;
+        mSensorStatus = sensor_status;
+    }
+
+    // Returns false, registering nothing, if a required sensor is missing.
+    abstract boolean start(Handler handler, int sampling_period, int max_report_latency);
+
+    void stop(){
+        mSensorManager.unregisterListener(this);
+    }
+
+    @Override
+    public void onAccuracyChanged(final Sensor sensor, final int accuracy) {
+    }
+
+    protected Sensor getGravitySensor(){
+        final Sensor gravity = mSensorManager.getDefaultSensor(Sensor.TYPE_GRAVITY);
+        return gravity != null ? gravity : mSensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
+    }
+
+    protected Sensor getMagneticFieldSensor(){
+        return mSensorManager.getDefaultSensor(Sensor.TYPE_MAGNETIC_FIELD);
+    }
+
+    protected boolean register(
+            final Sensor sensor,
+            final Handler handler,
+            final int sampling_period,
+            final int max_report_latency
+    ){
+        if (max_report_latency > 0 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return mSensorManager.registerListener(this, sensor, sampling_period, max_report_latency, handler);
+        }
+        return mSensorManager.registerListener(this, sensor, sampling_period, handler);
+    }
+
+    // The angular velocity is differentiated from consecutive rotations, for engines without a gyroscope.
+    protected void publishRotation(final float[] rotation, final long timestamp){
+        final float dt = (timestamp - mLastRotationTimestamp) * NANOSECONDS_TO_SECONDS;
+
+        if (mLastRotationTimestamp != 0 && dt > 0.0f) {
+            // The skew symmetric part of R * R_last^T is [w]x * dt for small rotations.
+            final float[] r = rotation;
+            final float[] l = mLastRotation;
+            final float d21 = r[6]*l[3] + r[7]*l[4] + r[8]*l[5];
+            final float d12 = r[3]*l[6] + r[4]*l[7] + r[5]*l[8];
+            final float d02 = r[0]*l[6] + r[1]*l[7] + r[2]*l[8];
+            final float d20 = r[6]*l[0] + r[7]*l[1] + r[8]*l[2];
+            final float d10 = r[3]*l[0] + r[4]*l[1] + r[5]*l[2];
+            final float d01 = r[0]*l[3] + r[1]*l[4] + r[2]*l[5];
+
+            mMeasuredAngularVelocity[0] = (d21 - d12) / (2.0f * dt);
+            mMeasuredAngularVelocity[1] = (d02 - d20) / (2.0f * dt);
+            mMeasuredAngularVelocity[2] = (d10 - d01) / (2.0f * dt);
+            filter(mAngularVelocity, mMeasuredAngularVelocity, ANGULAR_VELOCITY_FILTER_COEFFICIENT);
+            mAngularVelocityData.setData(mAngularVelocity);
+        }
+
+        System.arraycopy(rotation, 0, mLastRotation, 0, 9);
+        mLastRotationTimestamp = timestamp;
+        mRotationData.setData(rotation);
+    }
+
+    // The gyroscope measures the angular velocity in the device frame, R rotates it to the world frame.
+    protected void publishRotation(final float[] rotation, final long timestamp, final float[] device_angular_velocity){
+        final float[] r = rotation;
+        final float[] w = device_angular_velocity;
+        mAngularVelocity[0] = r[0]*w[0] + r[1]*w[1] + r[2]*w[2];
+        mAngularVelocity[1] = r[3]*w[0] + r[4]*w[1] + r[5]*w[2];
+        mAngularVelocity[2] = r[6]*w[0] + r[7]*w[1] + r[8]*w[2];
+        mAngularVelocityData.setData(mAngularVelocity);
+
+        System.arraycopy(rotation, 0, mLastRotation, 0, 9);
+        mLastRotationTimestamp = timestamp;
+        mRotationData.setData(rotation);
+    }
+
+    protected void publishSensorStatus(final int status){
+        mSensorStatus.set(status);
+    }
+
+    protected static int getMissingDataStatus(final boolean gravity_received, final boolean magnetic_field_received){
+        return
+                (gravity_received ? 0 : ARStatusInterface.GRAVITY_SENSOR_FAILED_BIT) |
+                (magnetic_field_received ? 0 : ARStatusInterface.MAGNETIC_FIELD_SENSOR_FAILED_BIT);
+    }
+
+    protected static void filter(final float[] data, final float[] new_data, final float coefficient){
+        data[0] = new_data[0] * (1.0f - coefficient) + data[0] * coefficient;
+        data[1] = new_data[1] * (1.0f - coefficient) + data[1] * coefficient;
+        data[2] = new_data[2] * (1.0f - coefficient) + data[2] * coefficient;
+    }
+
+    // Quaternions are stored as {x, y, z, w}, the layout used by SensorManager.getRotationMatrixFromVector.
+    protected static void quaternionFromRotationMatrix(final float[] r, final float[] q){
+        final float trace = r[0] + r[4] + r[8];
+
+        if(trace > 0.0f){
+            final float s = (float) Math.sqrt(trace + 1.0f) * 2.0f;
+            q[3] = 0.25f * s;
+            q[0] = (r[7] - r[5]) / s;
+            q[1] = (r[2] - r[6]) / s;
+            q[2] = (r[3] - r[1]) / s;
+        }
+        else if(r[0] > r[4] && r[0] > r[8]){
+            final float s = (float) Math.sqrt(1.0f + r[0] - r[4] - r[8]) * 2.0f;
+            q[3] = (r[7] - r[5]) / s;
+            q[0] = 0.25f * s;
+            q[1] = (r[1] + r[3]) / s;
+            q[2] = (r[2] + r[6]) / s;
+        }
+        else if(r[4] > r[8]){
+            final float s = (float) Math.sqrt(1.0f + r[4] - r[0] - r[8]) * 2.0f;
+            q[3] = (r[2] - r[6]) / s;
+            q[0] = (r[1] + r[3]) / s;
+            q[1] = 0.25f * s;
+            q[2] = (r[5] + r[7]) / s;
+        }
+        else{
+            final float s = (float) Math.sqrt(1.0f + r[8] - r[0] - r[4]) * 2.0f;
+            q[3] = (r[3] - r[1]) / s;
+            q[0] = (r[2] + r[6]) / s;
+            q[1] = (r[5] + r[7]) / s;
+            q[2] = 0.25f * s;
+        }
+    }
+
+    protected static void rotationMatrixFromQuaternion(final float[] q, final float[] r){
+        final float x = q[0], y = q[1], z = q[2], w = q[3];
+
+        r[0] = 1.0f - 2.0f*(y*y + z*z);
+        r[1] = 2.0f*(x*y - z*w);
+        r[2] = 2.0f*(x*z + y*w);
+        r[3] = 2.0f*(x*y + z*w);
+        r[4] = 1.0f - 2.0f*(x*x + z*z);
+        r[5] = 2.0f*(y*z - x*w);
+        r[6] = 2.0f*(x*z - y*w);
+        r[7] = 2.0f*(y*z + x*w);
+        r[8] = 1.0f - 2.0f*(x*x + y*y);
+    }
+
+    protected static void normalizeQuaternion(final float[] q){
+        final float norm = (float) Math.sqrt(q[0]*q[0] + q[1]*q[1] + q[2]*q[2] + q[3]*q[3]);
+        q[0] /= norm;
+        q[1] /= norm;
+        q[2] /= norm;
+        q[3] /= norm;
+    }
+}
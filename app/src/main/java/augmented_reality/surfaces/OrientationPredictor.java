@@ -0,0 +1,73 @@
+package augmented_reality.surfaces;
+
+// Extrapolates the orientation to the display time of the frame: R' = exp([w]x * h) * R.
+class OrientationPredictor {
+
+    // Large predictions come from sensor glitches rather than real motion, and overshoot badly when motion stops.
+    private static final float MAX_PREDICTION_ANGLE = (float) (20.0 / 180.0 * Math.PI);
+    private static final float MILLISECONDS_TO_SECONDS = 1.0e-3f;
+
+    private final float[] mStep = new float[9];
+    private final float[] mResult = new float[9];
+    private volatile boolean mEnabled = false;
+    private volatile float mHorizon = 0.0f;
+
+    void setEnabled(final boolean enabled){
+        mEnabled = enabled;
+    }
+
+    void setHorizon(final long horizon){
+        mHorizon = horizon * MILLISECONDS_TO_SECONDS;
+    }
+
+    boolean isEnabled(){
+        return mEnabled && mHorizon > 0.0f;
+    }
+
+    // Rotates the matrix in place. Returns false, leaving it unchanged, if there is nothing to predict.
+    boolean predict(final float[] rotation, final float[] angular_velocity){
+        if (!isEnabled()) {
+            return false;
+        }
+
+        final float wx = angular_velocity[0];
+        final float wy = angular_velocity[1];
+        final float wz = angular_velocity[2];
+        final float speed = (float) Math.sqrt(wx*wx + wy*wy + wz*wz);
+        final float angle = Math.min(speed * mHorizon, MAX_PREDICTION_ANGLE);
+
+        if (angle < 1.0e-6f) {
+            return false;
+        }
+
+        // Rodrigues' formula for the rotation by angle about the unit axis w / |w|.
+        final float x = wx / speed;
+        final float y = wy / speed;
+        final float z = wz / speed;
+        final float c = (float) Math.cos(angle);
+        final float s = (float) Math.sin(angle);
+        final float t = 1.0f - c;
+
+        mStep[0] = t*x*x + c;
+        mStep[1] = t*x*y - s*z;
+        mStep[2] = t*x*z + s*y;
+        mStep[3] = t*x*y + s*z;
+        mStep[4] = t*y*y + c;
+        mStep[5] = t*y*z - s*x;
+        mStep[6] = t*x*z - s*y;
+        mStep[7] = t*y*z + s*x;
+        mStep[8] = t*z*z + c;
+
+        for (int row = 0; row < 3; row++) {
+            for (int column = 0; column < 3; column++) {
+                mResult[3*row + column] =
+                        mStep[3*row] * rotation[column] +
+                        mStep[3*row + 1] * rotation[3 + column] +
+                        mStep[3*row + 2] * rotation[6 + column];
+            }
+        }
+
+        System.arraycopy(mResult, 0, rotation, 0, 9);
+        return true;
+    }
+}
@@ -0,0 +1,157 @@
+package augmented_reality.surfaces;
+
+import android.graphics.RectF;
+
+import augmented_reality.markers.Marker;
+
+// Projects large marker sets in contiguous partitions on a small pool, the render thread taking the first one. Each
+// marker writes at its own index, so the result is the same as the serial pass.
+class ParallelProjector {
+
+    private static final int MAX_WORKERS = 3;
+
+    private class Worker extends Thread {
+        private final int mPartition;
+        private final RectF mBounds = new RectF();
+        private int mSeenGeneration = 0;
+
+        Worker(final int partition){
+            super("Projection worker " + partition);
+            mPartition = partition;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                synchronized (mLock) {
+                    while (mGeneration == mSeenGeneration && !mQuit) {
+                        try {
+                            mLock.wait();
+                        } catch (InterruptedException ignored) {
+                            return;
+                        }
+                    }
+                    if (mQuit) {
+                        return;
+                    }
+                    mSeenGeneration = mGeneration;
+                }
+
+                RuntimeException failure = null;
+                try {
+                    projectPartition(mPartition, mBounds);
+                } catch (RuntimeException e) {
+                    failure = e;
+                }
+
+                synchronized (mLock) {
+                    if (failure != null && mFailure == null) {
+                        mFailure = failure;
+                    }
+                    if (--mPending == 0) {
+                        mLock.notifyAll();
+                    }
+                }
+            }
+        }
+    }
+
+    private final Object mLock = new Object();
+    private final Worker[] mWorkers;
+    private final RectF mBounds = new RectF();
+    private int mGeneration = 0;
+    private int mPending = 0;
+    private boolean mQuit = false;
+    private RuntimeException mFailure;
+
+    // Inputs and outputs of the frame being projected, published to the workers through mLock.
+    private Marker[] mMarkers;
+    private int mCount;
+    private boolean[] mProjected;
+    private float[] mProjectedBounds;
+
+    // Returns null if the device has a single core, where a pool would only add overhead.
+    static ParallelProjector create(){
+        final int workers = Math.min(Runtime.getRuntime().availableProcessors() - 1, MAX_WORKERS);
+        return workers > 0 ? new ParallelProjector(workers) : null;
+    }
+
+    ParallelProjector(final int workers){
+        mWorkers = new Worker[workers];
+        for (int i = 0; i < workers; i++) {
+            mWorkers[i] = new Worker(i + 1);
+            mWorkers[i].start();
+        }
+    }
+
+    // projected[i] tells whether markers[i] is on screen, bounds[4*i..4*i+3] holds its bounds.
+
+    void project(final Marker[] markers, final int count, final boolean[] projected, final float[] bounds){
+        synchronized (mLock) {
+            mMarkers = markers;
+            mCount = count;
+            mProjected = projected;
+            mProjectedBounds = bounds;
+            mFailure = null;
+            mPending = mWorkers.length;
+            mGeneration++;
+            mLock.notifyAll();
+        }
+
+        RuntimeException failure = null;
+        try {
+            projectPartition(0, mBounds);
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+
+        boolean interrupted = false;
+        synchronized (mLock) {
+            while (mPending > 0) {
+                try {
+                    mLock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (failure == null) {
+                failure = mFailure;
+            }
+            mMarkers = null;
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    void release(){
+        synchronized (mLock) {
+            mQuit = true;
+            mLock.notifyAll();
+        }
+    }
+
+    private void projectPartition(final int partition, final RectF scratch){
+        final int partitions = mWorkers.length + 1;
+        final int start = (int) ((long) mCount * partition / partitions);
+        final int end = (int) ((long) mCount * (partition + 1) / partitions);
+
+        for (int i = start; i < end; i++) {
+            scratch.setEmpty();
+            mProjected[i] = mMarkers[i].onProject(scratch);
+
+            if (mProjected[i]) {
+                final int offset = 4 * i;
+                mProjectedBounds[offset] = scratch.left;
+                mProjectedBounds[offset + 1] = scratch.top;
+                mProjectedBounds[offset + 2] = scratch.right;
+                mProjectedBounds[offset + 3] = scratch.bottom;
+            }
+        }
+    }
+}
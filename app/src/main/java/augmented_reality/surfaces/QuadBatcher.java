@@ -0,0 +1,117 @@
+package augmented_reality.surfaces;
+
+// Collects textured quads and hands them to a Sink, one batch per run of quads sharing a texture.
+class QuadBatcher {
+
+    interface Sink {
+        // vertices holds quad_count * VERTICES_PER_QUAD vertices of FLOATS_PER_VERTEX floats (x, y in pixels, u, v,
+        // alpha), in the order expected by the indices of createIndices. Only valid during the call.
+        void drawQuads(Object texture, float[] vertices, int quad_count);
+    }
+
+    static final int FLOATS_PER_VERTEX = 5;
+    static final int VERTICES_PER_QUAD = 4;
+    static final int INDICES_PER_QUAD = 6;
+    // Vertices are indexed with unsigned shorts.
+    static final int MAX_QUADS = 65536 / VERTICES_PER_QUAD;
+
+    private final Sink mSink;
+    private final int mMaxQuads;
+    private final float[] mVertices;
+    private Object mTexture;
+    private int mQuadCount;
+    private int mBatchCount;
+
+    QuadBatcher(final Sink sink, final int max_quads){
+        mSink = sink;
+        mMaxQuads = Math.max(1, Math.min(MAX_QUADS, max_quads));
+        mVertices = new float[mMaxQuads * VERTICES_PER_QUAD * FLOATS_PER_VERTEX];
+    }
+
+    int getMaxQuads(){
+        return mMaxQuads;
+    }
+
+    // Two triangles per quad: (0, 1, 2) and (0, 2, 3).
+    static short[] createIndices(final int quads){
+        final short[] indices = new short[quads * INDICES_PER_QUAD];
+
+        for (int q = 0; q < quads; q++) {
+            final int vertex = q * VERTICES_PER_QUAD;
+            final int offset = q * INDICES_PER_QUAD;
+            indices[offset] = (short) vertex;
+            indices[offset + 1] = (short) (vertex + 1);
+            indices[offset + 2] = (short) (vertex + 2);
+            indices[offset + 3] = (short) vertex;
+            indices[offset + 4] = (short) (vertex + 2);
+            indices[offset + 5] = (short) (vertex + 3);
+        }
+
+        return indices;
+    }
+
+    // matrix[offset..offset+5] is (a, b, c, d, tx, ty), mapping x, y to (a*x + c*y + tx, b*x + d*y + ty). u0, v0 and
+    // u1, v1 are the texture coordinates of the top left and bottom right corners.
+    void add(
+            final Object texture,
+            final float left,
+            final float top,
+            final float right,
+            final float bottom,
+            final float u0,
+            final float v0,
+            final float u1,
+            final float v1,
+            final float alpha,
+            final float[] matrix,
+            final int offset
+    ){
+        if (texture != mTexture || mQuadCount == mMaxQuads) {
+            flush();
+            mTexture = texture;
+        }
+
+        int vertex = mQuadCount * VERTICES_PER_QUAD * FLOATS_PER_VERTEX;
+        vertex = putVertex(vertex, left, top, u0, v0, alpha, matrix, offset);
+        vertex = putVertex(vertex, right, top, u1, v0, alpha, matrix, offset);
+        vertex = putVertex(vertex, right, bottom, u1, v1, alpha, matrix, offset);
+        putVertex(vertex, left, bottom, u0, v1, alpha, matrix, offset);
+
+        mQuadCount++;
+    }
+
+    private int putVertex(
+            final int vertex,
+            final float x,
+            final float y,
+            final float u,
+            final float v,
+            final float alpha,
+            final float[] matrix,
+            final int offset
+    ){
+        mVertices[vertex] = matrix[offset] * x + matrix[offset + 2] * y + matrix[offset + 4];
+        mVertices[vertex + 1] = matrix[offset + 1] * x + matrix[offset + 3] * y + matrix[offset + 5];
+        mVertices[vertex + 2] = u;
+        mVertices[vertex + 3] = v;
+        mVertices[vertex + 4] = alpha;
+
+        return vertex + FLOATS_PER_VERTEX;
+    }
+
+    void flush(){
+        if (mQuadCount > 0) {
+            mSink.drawQuads(mTexture, mVertices, mQuadCount);
+            mQuadCount = 0;
+            mBatchCount++;
+        }
+        mTexture = null;
+    }
+
+    // Number of batches handed to the sink since the last call.
+    int takeBatchCount(){
+        final int batch_count = mBatchCount;
+        mBatchCount = 0;
+        return batch_count;
+    }
+}
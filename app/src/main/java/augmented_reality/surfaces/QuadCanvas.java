@@ -0,0 +1,143 @@
+package augmented_reality.surfaces;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+// Canvas of the GL renderer: affine bitmap draws become QuadBatcher quads, everything else draws into the overlay.
+class QuadCanvas extends Canvas {
+
+    private final QuadBatcher mBatcher;
+    private final Matrix mMatrix = new Matrix();
+    private final float[] mValues = new float[9];
+    // Current matrix as (a, b, c, d, tx, ty), the layout expected by QuadBatcher.add.
+    private final float[] mAffine = new float[6];
+
+    QuadCanvas(final Bitmap overlay, final QuadBatcher batcher){
+        super(overlay);
+        mBatcher = batcher;
+    }
+
+    // Resets the state a previous frame may have left unbalanced.
+    void beginFrame(){
+        restoreToCount(1);
+        setMatrix(null);
+    }
+
+    @Override
+    public void drawBitmap(final Bitmap bitmap, final float left, final float top, final Paint paint){
+        if (!loadAffineMatrix()) {
+            super.drawBitmap(bitmap, left, top, paint);
+            return;
+        }
+        addQuad(bitmap, null, left, top, left + bitmap.getWidth(), top + bitmap.getHeight(), paint);
+    }
+
+    @Override
+    public void drawBitmap(final Bitmap bitmap, final Rect src, final RectF dst, final Paint paint){
+        if (!loadAffineMatrix()) {
+            super.drawBitmap(bitmap, src, dst, paint);
+            return;
+        }
+        addQuad(bitmap, src, dst.left, dst.top, dst.right, dst.bottom, paint);
+    }
+
+    @Override
+    public void drawBitmap(final Bitmap bitmap, final Rect src, final Rect dst, final Paint paint){
+        if (!loadAffineMatrix()) {
+            super.drawBitmap(bitmap, src, dst, paint);
+            return;
+        }
+        addQuad(bitmap, src, dst.left, dst.top, dst.right, dst.bottom, paint);
+    }
+
+    @Override
+    public void drawBitmap(final Bitmap bitmap, final Matrix matrix, final Paint paint){
+        if (!loadAffineMatrix() || !concatAffineMatrix(matrix)) {
+            super.drawBitmap(bitmap, matrix, paint);
+            return;
+        }
+        addQuad(bitmap, null, 0.0f, 0.0f, bitmap.getWidth(), bitmap.getHeight(), paint);
+    }
+
+    // Loads the current matrix of the canvas in mAffine. Returns false if it has a perspective part.
+    private boolean loadAffineMatrix(){
+        getMatrix(mMatrix);
+        mMatrix.getValues(mValues);
+
+        if (isPerspective(mValues)) {
+            return false;
+        }
+
+        mAffine[0] = mValues[Matrix.MSCALE_X];
+        mAffine[1] = mValues[Matrix.MSKEW_Y];
+        mAffine[2] = mValues[Matrix.MSKEW_X];
+        mAffine[3] = mValues[Matrix.MSCALE_Y];
+        mAffine[4] = mValues[Matrix.MTRANS_X];
+        mAffine[5] = mValues[Matrix.MTRANS_Y];
+        return true;
+    }
+
+    // Post-multiplies mAffine by matrix. Returns false if matrix has a perspective part.
+    private boolean concatAffineMatrix(final Matrix matrix){
+        matrix.getValues(mValues);
+
+        if (isPerspective(mValues)) {
+            return false;
+        }
+
+        final float a = mAffine[0];
+        final float b = mAffine[1];
+        final float c = mAffine[2];
+        final float d = mAffine[3];
+        final float ma = mValues[Matrix.MSCALE_X];
+        final float mb = mValues[Matrix.MSKEW_Y];
+        final float mc = mValues[Matrix.MSKEW_X];
+        final float md = mValues[Matrix.MSCALE_Y];
+        final float mtx = mValues[Matrix.MTRANS_X];
+        final float mty = mValues[Matrix.MTRANS_Y];
+
+        mAffine[0] = a * ma + c * mb;
+        mAffine[1] = b * ma + d * mb;
+        mAffine[2] = a * mc + c * md;
+        mAffine[3] = b * mc + d * md;
+        mAffine[4] += a * mtx + c * mty;
+        mAffine[5] += b * mtx + d * mty;
+        return true;
+    }
+
+    private static boolean isPerspective(final float[] values){
+        return values[Matrix.MPERSP_0] != 0.0f || values[Matrix.MPERSP_1] != 0.0f || values[Matrix.MPERSP_2] != 1.0f;
+    }
+
+    private void addQuad(
+            final Bitmap bitmap,
+            final Rect src,
+            final float left,
+            final float top,
+            final float right,
+            final float bottom,
+            final Paint paint
+    ){
+        final float width = bitmap.getWidth();
+        final float height = bitmap.getHeight();
+
+        mBatcher.add(
+                bitmap,
+                left,
+                top,
+                right,
+                bottom,
+                src == null ? 0.0f : src.left / width,
+                src == null ? 0.0f : src.top / height,
+                src == null ? 1.0f : src.right / width,
+                src == null ? 1.0f : src.bottom / height,
+                paint == null ? 1.0f : paint.getAlpha() / 255.0f,
+                mAffine,
+                0
+        );
+    }
+}
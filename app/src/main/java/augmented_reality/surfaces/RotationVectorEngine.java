@@ -0,0 +1,156 @@
+package augmented_reality.surfaces;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorManager;
+import android.os.Build;
+import android.os.Handler;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Uses the platform rotation vector, or the game rotation vector with its heading aligned to the magnetometer.
+
+class RotationVectorEngine extends OrientationEngine {
+
+    // Fraction of the heading error corrected at each accelerometer/magnetometer sample in the game mode.
+    private static final float HEADING_CORRECTION_COEFFICIENT = 0.02f;
+
+    private final float[] mRotationVector = new float[4];
+    private final float[] mRotation = new float[9];
+    private final float[] mGravity = new float[3];
+    private final float[] mMagneticField = new float[3];
+    private final float[] mMeasuredRotation = new float[9];
+    private final float[] mGameRotation = new float[9];
+    private boolean mGameMode = false;
+    private boolean mGravityReceived = false;
+    private boolean mMagneticFieldReceived = false;
+    private boolean mHeadingOffsetOK = false;
+    private float mHeadingOffset = 0.0f;
+    private boolean mGameRotationOK = false;
+
+    RotationVectorEngine(
+            final SensorManager sensor_manager,
+            final ARMarkersSurface.SharedVector rotation_data,
+            final ARMarkersSurface.SharedVector angular_velocity_data,
+            final AtomicInteger sensor_status
+    ){
+        super(sensor_manager, rotation_data, angular_velocity_data, sensor_status);
+    }
+
+    @Override
+    boolean start(final Handler handler, final int sampling_period, final int max_report_latency) {
+        final Sensor rotation_vector = mSensorManager.getDefaultSensor(Sensor.TYPE_ROTATION_VECTOR);
+
+        if (rotation_vector != null) {
+            mGameMode = false;
+            publishSensorStatus(getMissingDataStatus(false, false));
+            register(rotation_vector, handler, sampling_period, max_report_latency);
+            return true;
+        }
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            final Sensor game_rotation_vector = mSensorManager.getDefaultSensor(Sensor.TYPE_GAME_ROTATION_VECTOR);
+
+            if (game_rotation_vector != null) {
+                mGameMode = true;
+                publishSensorStatus(getMissingDataStatus(false, false));
+                register(game_rotation_vector, handler, sampling_period, max_report_latency);
+                register(getGravitySensor(), handler, sampling_period, max_report_latency);
+                register(getMagneticFieldSensor(), handler, sampling_period, max_report_latency);
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public void onSensorChanged(final SensorEvent event) {
+        final int type = event.sensor.getType();
+
+        if (type == Sensor.TYPE_ROTATION_VECTOR) {
+            publishSensorStatus(0);
+            getRotationMatrixFromVector(event.values, mRotation);
+            publishRotation(mRotation, event.timestamp);
+        } else if (type == Sensor.TYPE_GAME_ROTATION_VECTOR) {
+            getRotationMatrixFromVector(event.values, mGameRotation);
+            mGameRotationOK = true;
+            publishGameRotation(event.timestamp);
+        } else if (type == Sensor.TYPE_GRAVITY || type == Sensor.TYPE_ACCELEROMETER) {
+            filter(mGravity, event.values, 0.0f);
+            mGravityReceived = true;
+            updateHeadingOffset();
+        } else if (type == Sensor.TYPE_MAGNETIC_FIELD) {
+            filter(mMagneticField, event.values, 0.0f);
+            mMagneticFieldReceived = true;
+            updateHeadingOffset();
+        }
+    }
+
+    // Some devices deliver more than 4 values, which older getRotationMatrixFromVector implementations reject.
+    private void getRotationMatrixFromVector(final float[] values, final float[] rotation){
+        if (values.length > 4) {
+            System.arraycopy(values, 0, mRotationVector, 0, 4);
+            SensorManager.getRotationMatrixFromVector(rotation, mRotationVector);
+        } else {
+            SensorManager.getRotationMatrixFromVector(rotation, values);
+        }
+    }
+
+    // Azimuth as defined by SensorManager.getOrientation.
+    private static float getAzimuth(final float[] rotation){
+        return (float) Math.atan2(rotation[1], rotation[4]);
+    }
+
+    private static float wrapAngle(float angle){
+        while (angle > Math.PI) {
+            angle -= 2.0 * Math.PI;
+        }
+        while (angle < -Math.PI) {
+            angle += 2.0 * Math.PI;
+        }
+        return angle;
+    }
+
+    private void updateHeadingOffset(){
+        publishSensorStatus(getMissingDataStatus(mGravityReceived, mMagneticFieldReceived));
+
+        if (
+                !mGameRotationOK ||
+                !mGravityReceived ||
+                !mMagneticFieldReceived ||
+                !SensorManager.getRotationMatrix(mMeasuredRotation, null, mGravity, mMagneticField)
+        ) {
+            return;
+        }
+
+        // Rotating the world frame by theta about the up axis subtracts theta from the azimuth.
+        final float offset = wrapAngle(getAzimuth(mGameRotation) - getAzimuth(mMeasuredRotation));
+
+        if (!mHeadingOffsetOK) {
+            mHeadingOffset = offset;
+            mHeadingOffsetOK = true;
+        } else {
+            mHeadingOffset = wrapAngle(mHeadingOffset + HEADING_CORRECTION_COEFFICIENT * wrapAngle(offset - mHeadingOffset));
+        }
+    }
+
+    private void publishGameRotation(final long timestamp){
+        if (!mHeadingOffsetOK) {
+            return;
+        }
+
+        final float c = (float) Math.cos(mHeadingOffset);
+        final float s = (float) Math.sin(mHeadingOffset);
+
+        for (int column = 0; column < 3; column++) {
+            final float r0 = mGameRotation[column];
+            final float r1 = mGameRotation[3 + column];
+            mRotation[column] = c * r0 - s * r1;
+            mRotation[3 + column] = s * r0 + c * r1;
+            mRotation[6 + column] = mGameRotation[6 + column];
+        }
+
+        publishRotation(mRotation, timestamp);
+    }
+}
@@ -1,9 +1,6 @@
 package augmented_reality.surfaces;
 
 import android.content.Context;
-import android.hardware.Sensor;
-import android.hardware.SensorEvent;
-import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 import android.location.Location;
 import android.location.LocationListener;
@@ -11,54 +8,104 @@ import android.location.LocationManager;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.HandlerThread;
-import android.hardware.GeomagneticField;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
+import augmented_reality.kernel.AugmentedRealityKernelInterface;
 import augmented_reality.parameters.ParameterManager;
 
 import static augmented_reality.parameters.ParameterNames.*;
 
-class SensorThread extends HandlerThread implements SensorEventListener, LocationListener {
-    private final ARMarkersSurface.SharedData<float[]> mGravityData;
-    private final ARMarkersSurface.SharedData<float[]> mMagneticFieldData;
+class SensorThread extends HandlerThread implements LocationListener {
+
+    // Lower bound of the period at which the accuracy flag of the current location is re-evaluated.
+    private static final long MIN_LOCATION_CRITICISM_PERIOD = 250;
+    private static final float MICROSECONDS_PER_SECOND = 1.0e6f;
+
+    private final ARMarkersSurface.SharedVector mOrientationData;
+    private final ARMarkersSurface.SharedVector mAngularVelocityData;
+    private final AtomicInteger mSensorStatus;
     private final ARMarkersSurface.SharedData<Location> mLocationData;
-    private final ARMarkersSurface.SharedData<GeomagneticField> mGeomagneticFieldData;
+    private final ARMarkersSurface.SharedVector mDeclinationData;
+    private final GeomagneticCache mGeomagneticCache = new GeomagneticCache();
+    private final float[] mDeclination = new float[1];
     private final ParameterManager<String> mParameters;
-    private float mGravityFilteringCoefficient;
-    private float mMagneticFilteringCoefficient;
+    private final AccelerometerMagnetometerEngine mAccelerometerMagnetometerEngine;
+    private OrientationEngine mOrientationEngine;
+    private final MotionDetector mMotionDetector;
     private Handler mHandler;
     private final SensorManager mSensorManager;
     private Object mGravityCoefficientCallbackId;
     private Object mMagneticCoefficientCallbackId;
     private Object mTimeBetweenLocationReadsCallbackId;
+    private Object mOrientationModeCallbackId;
+    private Object mFilterModeCallbackId;
+    private Object mGravityTimeConstantCallbackId;
+    private Object mMagneticTimeConstantCallbackId;
+    private Object mSamplingPeriodCallbackId;
+    private Object mMaxReportLatencyCallbackId;
+    private Object mTargetFrameRateCallbackId;
+    private Object mMotionDetectionEnabledCallbackId;
+    private boolean mMotionDetectionEnabled = false;
+    private int mSamplingPeriod;
+    private int mMaxReportLatency;
+    private float mTargetFrameRate;
     private final LocationManager mLocationManager;
     private long mTimeBetweenLocationReads = 0;
     private long mGPSDelay = 0;
-    private long mLastTimeLocationWasCriticized = System.currentTimeMillis();
+
+    private final Runnable mCriticizeLocation = new Runnable() {
+        @Override
+        public void run() {
+            criticizeCurrentLocationData();
+            mHandler.postDelayed(this, Math.max(mTimeBetweenLocationReads, MIN_LOCATION_CRITICISM_PERIOD));
+        }
+    };
 
     public SensorThread(
             final String name,
             final Context context,
-            final ARMarkersSurface.SharedData<float[]> gravity_data,
-            final ARMarkersSurface.SharedData<float[]> magnetic_field_data,
+            final ARMarkersSurface.SharedVector orientation_data,
+            final ARMarkersSurface.SharedVector angular_velocity_data,
+            final AtomicInteger sensor_status,
             final ARMarkersSurface.SharedData<Location> location_data,
-            final ARMarkersSurface.SharedData<GeomagneticField> geomagnetic_field_data,
+            final ARMarkersSurface.SharedVector declination_data,
             final ParameterManager<String> parameters
     ) {
         super(name);
 
         mParameters = parameters;
 
-        mGravityData = gravity_data;
-        mMagneticFieldData = magnetic_field_data;
+        mOrientationData = orientation_data;
+        mAngularVelocityData = angular_velocity_data;
+        mSensorStatus = sensor_status;
         mLocationData = location_data;
-        mGeomagneticFieldData = geomagnetic_field_data;
+        mDeclinationData = declination_data;
 
         mSensorManager = (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
         mLocationManager = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
 
         updateLocation(mLocationManager.getLastKnownLocation(LocationManager.GPS_PROVIDER));
-        mGravityFilteringCoefficient = (Float) mParameters.getParameter(GRAVITY_FILTER_COEFFICIENT);
-        mMagneticFilteringCoefficient = (Float) mParameters.getParameter(MAGNETIC_FIELD_FILTER_COEFFICIENT);
+        mAccelerometerMagnetometerEngine =
+                new AccelerometerMagnetometerEngine(
+                        mSensorManager,
+                        mOrientationData,
+                        mAngularVelocityData,
+                        mSensorStatus,
+                        (Float) mParameters.getParameter(GRAVITY_FILTER_COEFFICIENT),
+                        (Float) mParameters.getParameter(MAGNETIC_FIELD_FILTER_COEFFICIENT)
+                );
+        mMotionDetector = new MotionDetector(mSensorManager, mParameters);
+        mSamplingPeriod = (Integer) mParameters.getParameter(SENSOR_SAMPLING_PERIOD);
+        mMaxReportLatency = (Integer) mParameters.getParameter(SENSOR_MAX_REPORT_LATENCY);
+        mTargetFrameRate = (Float) mParameters.getParameter(TARGET_FRAME_RATE);
+        mAccelerometerMagnetometerEngine.setFilterMode((Integer) mParameters.getParameter(FILTER_MODE));
+        mAccelerometerMagnetometerEngine.setGravityFilterTimeConstant(
+                (Long) mParameters.getParameter(GRAVITY_FILTER_TIME_CONSTANT)
+        );
+        mAccelerometerMagnetometerEngine.setMagneticFilterTimeConstant(
+                (Long) mParameters.getParameter(MAGNETIC_FIELD_FILTER_TIME_CONSTANT)
+        );
     }
 
     @Override
@@ -68,38 +115,6 @@ class SensorThread extends HandlerThread implements SensorEventListener, Locatio
         initParametersListening();
     }
 
-    @Override
-    public void onSensorChanged(SensorEvent event) {
-
-        final float[] new_data = new float[3];
-        System.arraycopy(event.values,0,new_data,0,3);
-
-        if (event.sensor.getType() == Sensor.TYPE_GRAVITY || event.sensor.getType() == Sensor.TYPE_ACCELEROMETER) {
-            float[] old_data = mGravityData.getData();
-            if (old_data != null) {
-                new_data[0] = new_data[0] * (1.0f - mGravityFilteringCoefficient) + old_data[0] * mGravityFilteringCoefficient;
-                new_data[1] = new_data[1] * (1.0f - mGravityFilteringCoefficient) + old_data[1] * mGravityFilteringCoefficient;
-                new_data[2] = new_data[2] * (1.0f - mGravityFilteringCoefficient) + old_data[2] * mGravityFilteringCoefficient;
-            }
-            mGravityData.setData(new_data);
-
-            criticizeCurrentLocationData();
-
-        } else if (event.sensor.getType() == Sensor.TYPE_MAGNETIC_FIELD) {
-            float[] old_data = mMagneticFieldData.getData();
-            if (old_data != null) {
-                new_data[0] = new_data[0] * (1.0f - mMagneticFilteringCoefficient) + old_data[0] * mMagneticFilteringCoefficient;
-                new_data[1] = new_data[1] * (1.0f - mMagneticFilteringCoefficient) + old_data[1] * mMagneticFilteringCoefficient;
-                new_data[2] = new_data[2] * (1.0f - mMagneticFilteringCoefficient) + old_data[2] * mMagneticFilteringCoefficient;
-            }
-            mMagneticFieldData.setData(new_data);
-        }
-    }
-
-    @Override
-    public void onAccuracyChanged(Sensor sensor, int accuracy) {
-    }
-
     @Override
     public void onLocationChanged(final Location location) {
         if(location.getProvider().equals(LocationManager.GPS_PROVIDER)){
@@ -126,16 +141,65 @@ class SensorThread extends HandlerThread implements SensorEventListener, Locatio
     }
 
     private void initSensorListening(){
-        Sensor gravity = mSensorManager.getDefaultSensor(Sensor.TYPE_GRAVITY);
-        if (gravity == null) {
-            gravity = mSensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
+        startOrientationEngine((Integer) mParameters.getParameter(ORIENTATION_MODE));
+        setMotionDetectionEnabled((Boolean) mParameters.getParameter(MOTION_DETECTION_ENABLED));
+
+        requestLocationUpdates((Long) mParameters.getParameter(TIME_BETWEEN_LOCATION_READS));
+        mHandler.post(mCriticizeLocation);
+    }
+
+    private void setMotionDetectionEnabled(final boolean enabled){
+        if (enabled == mMotionDetectionEnabled) {
+            return;
         }
-        Sensor magnetic = mSensorManager.getDefaultSensor(Sensor.TYPE_MAGNETIC_FIELD);
+        mMotionDetectionEnabled = enabled;
 
-        mSensorManager.registerListener(this, gravity, SensorManager.SENSOR_DELAY_FASTEST, mHandler);
-        mSensorManager.registerListener(this, magnetic, SensorManager.SENSOR_DELAY_FASTEST, mHandler);
+        if (enabled) {
+            mMotionDetector.start(mHandler);
+        } else {
+            mMotionDetector.stop();
+        }
+    }
 
-        requestLocationUpdates((Long) mParameters.getParameter(TIME_BETWEEN_LOCATION_READS));
+    // Falls back to the accelerometer/magnetometer engine when the sensors of the requested one are missing.
+    private void startOrientationEngine(final int mode){
+        if (mOrientationEngine != null) {
+            mOrientationEngine.stop();
+        }
+
+        switch (mode) {
+            case AugmentedRealityKernelInterface.ORIENTATION_COMPLEMENTARY_FILTER:
+                mOrientationEngine =
+                        new ComplementaryFilterEngine(mSensorManager, mOrientationData, mAngularVelocityData, mSensorStatus);
+                break;
+            case AugmentedRealityKernelInterface.ORIENTATION_ROTATION_VECTOR:
+                mOrientationEngine =
+                        new RotationVectorEngine(mSensorManager, mOrientationData, mAngularVelocityData, mSensorStatus);
+                break;
+            default:
+                mOrientationEngine = mAccelerometerMagnetometerEngine;
+                break;
+        }
+
+        if (!mOrientationEngine.start(mHandler, mSamplingPeriod, getMaxReportLatency())) {
+            mOrientationEngine = mAccelerometerMagnetometerEngine;
+            mOrientationEngine.start(mHandler, mSamplingPeriod, getMaxReportLatency());
+        }
+    }
+
+    // Re-registers the current engine, keeping its state, after the sampling period or the batching changed.
+    private void restartOrientationEngine(){
+        mOrientationEngine.stop();
+        mOrientationEngine.start(mHandler, mSamplingPeriod, getMaxReportLatency());
+    }
+
+    // In automatic mode events are batched over one frame period, if there is a target frame rate.
+
+    private int getMaxReportLatency(){
+        if (mMaxReportLatency != AugmentedRealityKernelInterface.SENSOR_REPORT_LATENCY_AUTO) {
+            return mMaxReportLatency;
+        }
+        return mTargetFrameRate > 0.0f ? (int) (MICROSECONDS_PER_SECOND / mTargetFrameRate) : 0;
     }
 
     private void initParametersListening(){
@@ -159,7 +223,7 @@ class SensorThread extends HandlerThread implements SensorEventListener, Locatio
                         new ParameterManager.DataChangedCallback<String>() {
                             @Override
                             public void onDataChanged(String key, Object data, Object old_data) {
-                                mGravityFilteringCoefficient = (Float) data;
+                                mAccelerometerMagnetometerEngine.setGravityFilteringCoefficient((Float) data);
                             }
                         },
                         mHandler
@@ -171,7 +235,109 @@ class SensorThread extends HandlerThread implements SensorEventListener, Locatio
                         new ParameterManager.DataChangedCallback<String>() {
                             @Override
                             public void onDataChanged(String key, Object data, Object old_data) {
-                                mMagneticFilteringCoefficient = (Float) data;
+                                mAccelerometerMagnetometerEngine.setMagneticFilteringCoefficient((Float) data);
+                            }
+                        },
+                        mHandler
+                );
+
+        mFilterModeCallbackId =
+                mParameters.registerCallback(
+                        FILTER_MODE,
+                        new ParameterManager.DataChangedCallback<String>() {
+                            @Override
+                            public void onDataChanged(String key, Object data, Object old_data) {
+                                mAccelerometerMagnetometerEngine.setFilterMode((Integer) data);
+                            }
+                        },
+                        mHandler
+                );
+
+        mGravityTimeConstantCallbackId =
+                mParameters.registerCallback(
+                        GRAVITY_FILTER_TIME_CONSTANT,
+                        new ParameterManager.DataChangedCallback<String>() {
+                            @Override
+                            public void onDataChanged(String key, Object data, Object old_data) {
+                                mAccelerometerMagnetometerEngine.setGravityFilterTimeConstant((Long) data);
+                            }
+                        },
+                        mHandler
+                );
+
+        mMagneticTimeConstantCallbackId =
+                mParameters.registerCallback(
+                        MAGNETIC_FIELD_FILTER_TIME_CONSTANT,
+                        new ParameterManager.DataChangedCallback<String>() {
+                            @Override
+                            public void onDataChanged(String key, Object data, Object old_data) {
+                                mAccelerometerMagnetometerEngine.setMagneticFilterTimeConstant((Long) data);
+                            }
+                        },
+                        mHandler
+                );
+
+        mSamplingPeriodCallbackId =
+                mParameters.registerCallback(
+                        SENSOR_SAMPLING_PERIOD,
+                        new ParameterManager.DataChangedCallback<String>() {
+                            @Override
+                            public void onDataChanged(String key, Object data, Object old_data) {
+                                mSamplingPeriod = (Integer) data;
+                                restartOrientationEngine();
+                            }
+                        },
+                        mHandler
+                );
+
+        mMaxReportLatencyCallbackId =
+                mParameters.registerCallback(
+                        SENSOR_MAX_REPORT_LATENCY,
+                        new ParameterManager.DataChangedCallback<String>() {
+                            @Override
+                            public void onDataChanged(String key, Object data, Object old_data) {
+                                mMaxReportLatency = (Integer) data;
+                                restartOrientationEngine();
+                            }
+                        },
+                        mHandler
+                );
+
+        mTargetFrameRateCallbackId =
+                mParameters.registerCallback(
+                        TARGET_FRAME_RATE,
+                        new ParameterManager.DataChangedCallback<String>() {
+                            @Override
+                            public void onDataChanged(String key, Object data, Object old_data) {
+                                final int old_latency = getMaxReportLatency();
+                                mTargetFrameRate = (Float) data;
+                                if (getMaxReportLatency() != old_latency) {
+                                    restartOrientationEngine();
+                                }
+                            }
+                        },
+                        mHandler
+                );
+
+        mOrientationModeCallbackId =
+                mParameters.registerCallback(
+                        ORIENTATION_MODE,
+                        new ParameterManager.DataChangedCallback<String>() {
+                            @Override
+                            public void onDataChanged(String key, Object data, Object old_data) {
+                                startOrientationEngine((Integer) data);
+                            }
+                        },
+                        mHandler
+                );
+
+        mMotionDetectionEnabledCallbackId =
+                mParameters.registerCallback(
+                        MOTION_DETECTION_ENABLED,
+                        new ParameterManager.DataChangedCallback<String>() {
+                            @Override
+                            public void onDataChanged(String key, Object data, Object old_data) {
+                                setMotionDetectionEnabled((Boolean) data);
                             }
                         },
                         mHandler
@@ -182,11 +348,21 @@ class SensorThread extends HandlerThread implements SensorEventListener, Locatio
         mHandler.post(new Runnable() {
             @Override
             public void run() {
-                mSensorManager.unregisterListener(SensorThread.this);
+                mOrientationEngine.stop();
+                setMotionDetectionEnabled(false);
+                mHandler.removeCallbacks(mCriticizeLocation);
                 cancelLocationUpdates();
                 mParameters.removeCallback(GRAVITY_FILTER_COEFFICIENT, mGravityCoefficientCallbackId);
                 mParameters.removeCallback(MAGNETIC_FIELD_FILTER_COEFFICIENT, mMagneticCoefficientCallbackId);
                 mParameters.removeCallback(TIME_BETWEEN_LOCATION_READS, mTimeBetweenLocationReadsCallbackId);
+                mParameters.removeCallback(ORIENTATION_MODE, mOrientationModeCallbackId);
+                mParameters.removeCallback(SENSOR_SAMPLING_PERIOD, mSamplingPeriodCallbackId);
+                mParameters.removeCallback(SENSOR_MAX_REPORT_LATENCY, mMaxReportLatencyCallbackId);
+                mParameters.removeCallback(TARGET_FRAME_RATE, mTargetFrameRateCallbackId);
+                mParameters.removeCallback(FILTER_MODE, mFilterModeCallbackId);
+                mParameters.removeCallback(GRAVITY_FILTER_TIME_CONSTANT, mGravityTimeConstantCallbackId);
+                mParameters.removeCallback(MAGNETIC_FIELD_FILTER_TIME_CONSTANT, mMagneticTimeConstantCallbackId);
+                mParameters.removeCallback(MOTION_DETECTION_ENABLED, mMotionDetectionEnabledCallbackId);
             }
         });
     }
@@ -224,29 +400,23 @@ class SensorThread extends HandlerThread implements SensorEventListener, Locatio
                     location.getTime() - last_good_location.getTime() > 2*60*1000
             ) {
 
-                Location temp = new Location(location);
-                mLocationData.setData(temp);
-
-                final GeomagneticField geomagnetic_field =
-                        new GeomagneticField(
-                                (float) location.getLatitude(),
-                                (float) location.getLongitude(),
-                                (float) location.getAltitude(),
+                mDeclination[0] =
+                        mGeomagneticCache.getDeclination(
+                                location.getLatitude(),
+                                location.getLongitude(),
+                                location.getAltitude(),
                                 location.getTime()
                         );
-                mGeomagneticFieldData.setData(geomagnetic_field);
+                mDeclinationData.setData(mDeclination);
+
+                Location temp = new Location(location);
+                mLocationData.setData(temp);
             }
         }
     }
 
     private void criticizeCurrentLocationData(){
 
-        final long current_time = System.currentTimeMillis();
-        if (current_time - mLastTimeLocationWasCriticized < mTimeBetweenLocationReads) {
-            return;
-        }
-        mLastTimeLocationWasCriticized = current_time;
-
         final Location current_location = mLocationData.getData();
 
         if(current_location != null) {
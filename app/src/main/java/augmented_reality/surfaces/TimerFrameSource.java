@@ -0,0 +1,37 @@
+package augmented_reality.surfaces;
+
+// Fixed period frame source, for devices without Choreographer and for tests.
+
+class TimerFrameSource implements FrameSource {
+
+    private final long mPeriod;
+    private long mNextFrameTime;
+
+    TimerFrameSource(final long period_nanos){
+        mPeriod = period_nanos;
+        mNextFrameTime = System.nanoTime();
+    }
+
+    @Override
+    public long awaitFrame() throws InterruptedException {
+        long now = System.nanoTime();
+
+        if(now - mNextFrameTime > mPeriod){
+            mNextFrameTime = now - (now - mNextFrameTime) % mPeriod;
+        }
+
+        while(now < mNextFrameTime){
+            final long wait = mNextFrameTime - now;
+            Thread.sleep(wait / 1000000L, (int) (wait % 1000000L));
+            now = System.nanoTime();
+        }
+
+        final long frame_time = mNextFrameTime;
+        mNextFrameTime += mPeriod;
+        return frame_time;
+    }
+
+    @Override
+    public void release() {
+    }
+}
@@ -15,6 +15,7 @@ import augmented_reality.markers.Marker;
 import augmented_reality.markers.MarkerImage;
 import augmented_reality.markers.MarkerImageFactory;
 import augmented_reality.markers.SimpleDirectionMarker;
+import java.util.ArrayList;
 
 import static android.widget.Toast.*;
 
@@ -215,12 +216,14 @@ public class MainActivity extends AugmentedRealityActivity {
     }
 
     private void setMarkers(){
+        final ArrayList<Marker> markers = new ArrayList<>();
+
         final String[] names =     {"N",    "NE",   "E",    "SE",   "S",    "SW",   "W",   "NW"};
         final float[] directions = {0.0f,   45.0f,  90.0f,  135.0f, 180.0f, 225.0f, 270.0f, 315.0f};
         final float[] sizes =      {200.0f, 100.0f, 150.0f, 100.0f, 150.0f, 100.0f, 150.0f, 100.0f};
 
         for(int i=0; i<names.length; i++) {
-            getARInterface().addMarker(
+            markers.add(
                     new SimpleDirectionMarker(
                             names[i],
                             MarkerImageFactory.createMarkerImage(
@@ -231,7 +234,7 @@ public class MainActivity extends AugmentedRealityActivity {
                             directions[i], 0.0f
                     )
             );
-            getARInterface().addMarker(
+            markers.add(
                     new SimpleDirectionMarker(
                             names[i],
                             MarkerImageFactory.createMarkerImage(
@@ -260,7 +263,7 @@ public class MainActivity extends AugmentedRealityActivity {
                     i != 270.0f  &&
                     i != 315.0f
             ) {
-                getARInterface().addMarker(
+                markers.add(
                         new SimpleDirectionMarker(
                                 "I" + i,
                                 pipe_character_image,
@@ -279,7 +282,7 @@ public class MainActivity extends AugmentedRealityActivity {
         for(float i=-75.0f; i<=80.0f; i+=5.0f){
             if(i != 0.0f){
                 for(float j=0.0f; j<360.0f; j+=45.0f){
-                    getARInterface().addMarker(
+                    markers.add(
                             new SimpleDirectionMarker(
                                     "." + i + "_" + j,
                                     ordinal_character_image,
@@ -290,7 +293,7 @@ public class MainActivity extends AugmentedRealityActivity {
             }
         }
 
-        getARInterface().addMarker(
+        markers.add(
                 new SimpleDirectionMarker(
                         "Up",
                         MarkerImageFactory.createMarkerImage(
@@ -302,7 +305,7 @@ public class MainActivity extends AugmentedRealityActivity {
                 )
         );
 
-        getARInterface().addMarker(
+        markers.add(
                 new SimpleDirectionMarker(
                         "Down",
                         MarkerImageFactory.createMarkerImage(
@@ -313,5 +316,7 @@ public class MainActivity extends AugmentedRealityActivity {
                         0.0f, -90.0f
                 )
         );
+
+        getARInterface().addMarkers(markers);
     }
 }
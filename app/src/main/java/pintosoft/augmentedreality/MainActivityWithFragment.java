@@ -9,9 +9,11 @@ import android.widget.SeekBar;
 
 import augmented_reality.graphical_components.AugmentedRealityFragment;
 import augmented_reality.kernel.AugmentedRealityKernelInterface;
+import augmented_reality.markers.Marker;
 import augmented_reality.markers.MarkerImage;
 import augmented_reality.markers.MarkerImageFactory;
 import augmented_reality.markers.SimpleDirectionMarker;
+import java.util.ArrayList;
 
 public class MainActivityWithFragment extends Activity{
 
@@ -111,6 +113,8 @@ public class MainActivityWithFragment extends Activity{
     }
 
     private void setMarkers(final AugmentedRealityKernelInterface AR_kernel){
+        final ArrayList<Marker> markers = new ArrayList<>();
+
         if(AR_kernel == null  ||  AR_kernel.getNumberOfMarkers() > 0){
             return;
         }
@@ -120,7 +124,7 @@ public class MainActivityWithFragment extends Activity{
         final float[] sizes =      {200.0f, 100.0f, 150.0f, 100.0f, 150.0f, 100.0f, 150.0f, 100.0f};
 
         for(int i=0; i<names.length; i++) {
-            AR_kernel.addMarker(
+            markers.add(
                     new SimpleDirectionMarker(
                             names[i],
                             MarkerImageFactory.createMarkerImage(
@@ -131,7 +135,7 @@ public class MainActivityWithFragment extends Activity{
                             directions[i], 0.0f
                     )
             );
-            AR_kernel.addMarker(
+            markers.add(
                     new SimpleDirectionMarker(
                             names[i],
                             MarkerImageFactory.createMarkerImage(
@@ -160,7 +164,7 @@ public class MainActivityWithFragment extends Activity{
                             i != 270.0f  &&
                             i != 315.0f
                     ) {
-                AR_kernel.addMarker(
+                markers.add(
                         new SimpleDirectionMarker(
                                 "I" + i,
                                 pipe_character_image,
@@ -179,7 +183,7 @@ public class MainActivityWithFragment extends Activity{
         for(float i=-75.0f; i<=80.0f; i+=5.0f){
             if(i != 0.0f){
                 for(float j=0.0f; j<360.0f; j+=45.0f){
-                    AR_kernel.addMarker(
+                    markers.add(
                             new SimpleDirectionMarker(
                                     "." + i + "_" + j,
                                     ordinal_character_image,
@@ -190,7 +194,7 @@ public class MainActivityWithFragment extends Activity{
             }
         }
 
-        AR_kernel.addMarker(
+        markers.add(
                 new SimpleDirectionMarker(
                         "Up",
                         MarkerImageFactory.createMarkerImage(
@@ -202,7 +206,7 @@ public class MainActivityWithFragment extends Activity{
                 )
         );
 
-        AR_kernel.addMarker(
+        markers.add(
                 new SimpleDirectionMarker(
                         "Down",
                         MarkerImageFactory.createMarkerImage(
@@ -213,5 +217,7 @@ public class MainActivityWithFragment extends Activity{
                         0.0f, -90.0f
                 )
         );
+
+        AR_kernel.addMarkers(markers);
     }
 }
@@ -15,6 +15,7 @@ import augmented_reality.markers.Marker;
 import augmented_reality.markers.MarkerImage;
 import augmented_reality.markers.MarkerImageFactory;
 import augmented_reality.markers.SimpleDirectionMarker;
+import java.util.ArrayList;
 
 import static android.widget.Toast.LENGTH_LONG;
 
@@ -154,12 +155,14 @@ public class MainActivityWithView extends Activity{
     }
 
     private void setMarkers(final AugmentedRealityKernelInterface AR_kernel){
+        final ArrayList<Marker> markers = new ArrayList<>();
+
         final String[] names =     {"N",    "NE",   "E",    "SE",   "S",    "SW",   "W",   "NW"};
         final float[] directions = {0.0f,   45.0f,  90.0f,  135.0f, 180.0f, 225.0f, 270.0f, 315.0f};
         final float[] sizes =      {200.0f, 100.0f, 150.0f, 100.0f, 150.0f, 100.0f, 150.0f, 100.0f};
 
         for(int i=0; i<names.length; i++) {
-            AR_kernel.addMarker(
+            markers.add(
                     new SimpleDirectionMarker(
                             names[i],
                             MarkerImageFactory.createMarkerImage(
@@ -170,7 +173,7 @@ public class MainActivityWithView extends Activity{
                             directions[i], 0.0f
                     )
             );
-            AR_kernel.addMarker(
+            markers.add(
                     new SimpleDirectionMarker(
                             names[i],
                             MarkerImageFactory.createMarkerImage(
@@ -199,7 +202,7 @@ public class MainActivityWithView extends Activity{
                             i != 270.0f  &&
                             i != 315.0f
                     ) {
-                AR_kernel.addMarker(
+                markers.add(
                         new SimpleDirectionMarker(
                                 "I" + i,
                                 pipe_character_image,
@@ -218,7 +221,7 @@ public class MainActivityWithView extends Activity{
         for(float i=-75.0f; i<=80.0f; i+=5.0f){
             if(i != 0.0f){
                 for(float j=0.0f; j<360.0f; j+=45.0f){
-                    AR_kernel.addMarker(
+                    markers.add(
                             new SimpleDirectionMarker(
                                     "." + i + "_" + j,
                                     ordinal_character_image,
@@ -229,7 +232,7 @@ public class MainActivityWithView extends Activity{
             }
         }
 
-        AR_kernel.addMarker(
+        markers.add(
                 new SimpleDirectionMarker(
                         "Up",
                         MarkerImageFactory.createMarkerImage(
@@ -241,7 +244,7 @@ public class MainActivityWithView extends Activity{
                 )
         );
 
-        AR_kernel.addMarker(
+        markers.add(
                 new SimpleDirectionMarker(
                         "Down",
                         MarkerImageFactory.createMarkerImage(
@@ -252,5 +255,7 @@ public class MainActivityWithView extends Activity{
                         0.0f, -90.0f
                 )
         );
+
+        AR_kernel.addMarkers(markers);
     }
 }
@@ -0,0 +1,50 @@
+package augmented_reality.markers;
+
+import android.graphics.Bitmap;
+
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MarkerImageFactoryTest {
+
+    // Bitmap has no public constructor, and its methods only return default values in unit tests.
+    private static Bitmap newBitmap() throws Exception {
+        final Field field = Class.forName("sun.misc.Unsafe").getDeclaredField("theUnsafe");
+        field.setAccessible(true);
+        final Object unsafe = field.get(null);
+        return (Bitmap) unsafe.getClass().getMethod("allocateInstance", Class.class).invoke(unsafe, Bitmap.class);
+    }
+
+    @Test
+    public void removingOneMarkerKeepsTheSharedImage() throws Exception {
+        final Bitmap bitmap = newBitmap();
+        final MarkerImage image = MarkerImageFactory.createMarkerImage(bitmap, 32.0f, 32.0f);
+        final Marker first = new SimpleDirectionMarker("first", image, 0.0f, 0.0f);
+        final Marker second = new SimpleDirectionMarker("second", image, 90.0f, 0.0f);
+
+        first.onRemoved();
+        first.onRemoved();
+
+        assertSame(image, MarkerImageFactory.createMarkerImage(bitmap, 32.0f, 32.0f));
+        assertTrue(MarkerImageFactory.releaseMarkerImage(image));
+        assertTrue(MarkerImageFactory.releaseMarkerImage(image));
+
+        second.onRemoved();
+
+        assertFalse(MarkerImageFactory.releaseMarkerImage(image));
+    }
+
+    @Test
+    public void imagesNotFromTheCacheAreNotRetained(){
+        final MarkerImage image = MarkerImageFactory.createMarkerImage("label", 20.0f, 0xFF000000);
+
+        assertFalse(MarkerImageFactory.retainMarkerImage(image));
+        new SimpleDirectionMarker("marker", image, 0.0f, 0.0f).onRemoved();
+        assertFalse(MarkerImageFactory.releaseMarkerImage(image));
+    }
+}
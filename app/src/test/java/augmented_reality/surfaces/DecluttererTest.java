@@ -0,0 +1,100 @@
+package augmented_reality.surfaces;
+
+import android.graphics.Canvas;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import augmented_reality.markers.Marker;
+
+import static org.junit.Assert.assertSame;
+
+public class DecluttererTest {
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+
+    private static class KeyedMarker extends Marker {
+        private final int mBatchKey;
+
+        KeyedMarker(final int batch_key){
+            mBatchKey = batch_key;
+        }
+
+        @Override
+        public int getBatchKey(){
+            return mBatchKey;
+        }
+
+        @Override
+        public void onDraw(final Canvas canvas){
+        }
+
+        @Override
+        public boolean touched(final float x, final float y){
+            return false;
+        }
+    }
+
+    private final Declutterer mDeclutterer = new Declutterer();
+    private final FrameSnapshot mSnapshot = new FrameSnapshot();
+
+    @Before
+    public void setUp(){
+        mSnapshot.reset(8);
+    }
+
+    private void add(final Marker marker, final float left, final float top, final float right, final float bottom){
+        mSnapshot.add(marker, new float[]{left, top, right, bottom}, 0);
+    }
+
+    private void assertOrder(final Marker... markers){
+        for (int i = 0; i < markers.length; i++) {
+            assertSame(markers[i], mSnapshot.getMarker(i));
+        }
+    }
+
+    @Test
+    public void separateMarkersAreGroupedByKey(){
+        final Marker a0 = new KeyedMarker(2);
+        final Marker b0 = new KeyedMarker(1);
+        final Marker a1 = new KeyedMarker(2);
+        final Marker b1 = new KeyedMarker(1);
+        add(a0, 0, 0, 10, 10);
+        add(b0, 100, 0, 110, 10);
+        add(a1, 200, 0, 210, 10);
+        add(b1, 300, 0, 310, 10);
+
+        mDeclutterer.sortByBatchKey(mSnapshot, WIDTH, HEIGHT);
+
+        assertOrder(b0, b1, a0, a1);
+    }
+
+    @Test
+    public void overlappingMarkersKeepTheirOrder(){
+        final Marker bottom = new KeyedMarker(2);
+        final Marker top = new KeyedMarker(1);
+        final Marker separate = new KeyedMarker(2);
+        add(bottom, 0, 0, 10, 10);
+        add(top, 5, 5, 15, 15);
+        add(separate, 100, 100, 110, 110);
+
+        mDeclutterer.sortByBatchKey(mSnapshot, WIDTH, HEIGHT);
+
+        assertOrder(bottom, separate, top);
+    }
+
+    @Test
+    public void markersAreNotMovedPastMarkersWithoutBounds(){
+        final Marker first = new KeyedMarker(2);
+        final Marker unbounded = new KeyedMarker(1);
+        final Marker last = new KeyedMarker(1);
+        add(first, 0, 0, 10, 10);
+        add(unbounded, 0, 0, 0, 0);
+        add(last, 100, 100, 110, 110);
+
+        mDeclutterer.sortByBatchKey(mSnapshot, WIDTH, HEIGHT);
+
+        assertOrder(first, unbounded, last);
+    }
+}
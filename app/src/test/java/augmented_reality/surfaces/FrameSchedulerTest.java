@@ -0,0 +1,167 @@
+package augmented_reality.surfaces;
+
+import org.junit.Test;
+
+import augmented_reality.kernel.AugmentedRealityKernelInterface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FrameSchedulerTest {
+
+    private static final long DISPLAY_FRAME_PERIOD = 1000000000L / 60L;
+
+    // Display ticking every DISPLAY_FRAME_PERIOD without waiting, so the tests do not depend on the clock.
+    private static class FakeFrameSource implements FrameSource {
+        long mFrameTime = 0L;
+        int mFrames = 0;
+
+        @Override
+        public long awaitFrame() {
+            mFrames++;
+            mFrameTime += DISPLAY_FRAME_PERIOD;
+            return mFrameTime;
+        }
+
+        @Override
+        public void release() {
+        }
+    }
+
+    private static FrameScheduler createVsyncScheduler(final float target_frame_rate, final FrameSource source){
+        return new FrameScheduler(AugmentedRealityKernelInterface.FRAME_SCHEDULER_VSYNC, 0L, target_frame_rate, source);
+    }
+
+    @Test
+    public void drawsEveryDisplayFrameWithoutCap() throws InterruptedException {
+        final FakeFrameSource source = new FakeFrameSource();
+        final FrameScheduler scheduler = createVsyncScheduler(0.0f, source);
+
+        for (int i=0; i<10; i++) {
+            scheduler.awaitFrame();
+            assertTrue(scheduler.shouldDraw(true));
+            scheduler.onFrameDrawn();
+        }
+
+        assertEquals(10, source.mFrames);
+    }
+
+    @Test
+    public void capsFrameRateToTarget() throws InterruptedException {
+        final FakeFrameSource source = new FakeFrameSource();
+        final FrameScheduler scheduler = createVsyncScheduler(30.0f, source);
+
+        for (int i=0; i<10; i++) {
+            scheduler.awaitFrame();
+            assertTrue(scheduler.shouldDraw(true));
+            scheduler.onFrameDrawn();
+        }
+
+        // The first frame is drawn right away, then every other display frame.
+        assertEquals(19, source.mFrames);
+    }
+
+    @Test
+    public void capToleratesDisplayJitter() throws InterruptedException {
+        final FakeFrameSource source = new FakeFrameSource();
+        // Slightly above what two display frames allow, still drawn every other frame rather than every third one.
+        final FrameScheduler scheduler = createVsyncScheduler(29.0f, source);
+
+        for (int i=0; i<10; i++) {
+            scheduler.awaitFrame();
+            scheduler.shouldDraw(true);
+            scheduler.onFrameDrawn();
+        }
+
+        assertEquals(19, source.mFrames);
+    }
+
+    @Test
+    public void alwaysDrawsFirstFrame() throws InterruptedException {
+        final FrameScheduler scheduler = createVsyncScheduler(0.0f, new FakeFrameSource());
+
+        scheduler.awaitFrame();
+        assertTrue(scheduler.shouldDraw(false));
+    }
+
+    @Test
+    public void skipsUnchangedFrames() throws InterruptedException {
+        final FrameScheduler scheduler = createVsyncScheduler(0.0f, new FakeFrameSource());
+
+        scheduler.awaitFrame();
+        scheduler.shouldDraw(true);
+        scheduler.onFrameDrawn();
+
+        scheduler.awaitFrame();
+        assertFalse(scheduler.shouldDraw(false));
+
+        scheduler.awaitFrame();
+        assertTrue(scheduler.shouldDraw(true));
+    }
+
+    @Test
+    public void drawsUnchangedFramesWhenSkippingDisabled() throws InterruptedException {
+        final FrameScheduler scheduler = createVsyncScheduler(0.0f, new FakeFrameSource());
+        scheduler.setSkippingEnabled(false);
+
+        for (int i=0; i<10; i++) {
+            scheduler.awaitFrame();
+            assertTrue(scheduler.shouldDraw(false));
+            scheduler.onFrameDrawn();
+        }
+    }
+
+    @Test
+    public void redrawsUnchangedFramesEverySecond() throws InterruptedException {
+        final FakeFrameSource source = new FakeFrameSource();
+        final FrameScheduler scheduler = createVsyncScheduler(0.0f, source);
+
+        scheduler.awaitFrame();
+        scheduler.shouldDraw(true);
+        scheduler.onFrameDrawn();
+        final long drawn_frame_time = source.mFrameTime;
+
+        do {
+            scheduler.awaitFrame();
+        } while (!scheduler.shouldDraw(false));
+
+        // Redrawn on the first display frame at least one second after the drawn one.
+        final long elapsed = source.mFrameTime - drawn_frame_time;
+        assertTrue(elapsed >= 1000000000L);
+        assertTrue(elapsed < 1000000000L + DISPLAY_FRAME_PERIOD);
+    }
+
+    @Test
+    public void sleepModeHonoursTargetFrameRate() throws InterruptedException {
+        // 20fps: frames start at least 50ms apart, even without a sleep time.
+        final FrameScheduler scheduler =
+                new FrameScheduler(AugmentedRealityKernelInterface.FRAME_SCHEDULER_SLEEP, 0L, 20.0f, null);
+
+        final long start = System.nanoTime();
+        for (int i=0; i<4; i++) {
+            scheduler.awaitFrame();
+            scheduler.shouldDraw(true);
+            scheduler.onFrameDrawn();
+        }
+
+        assertTrue(System.nanoTime() - start >= 3 * 50000000L);
+    }
+
+    @Test
+    public void sleepModeSleepsBetweenFrames() throws InterruptedException {
+        final FrameScheduler scheduler =
+                new FrameScheduler(AugmentedRealityKernelInterface.FRAME_SCHEDULER_SLEEP, 20L, 0.0f, null);
+
+        // No sleep before the first frame.
+        long start = System.nanoTime();
+        scheduler.awaitFrame();
+        assertTrue(System.nanoTime() - start < 20000000L);
+        scheduler.shouldDraw(true);
+        scheduler.onFrameDrawn();
+
+        start = System.nanoTime();
+        scheduler.awaitFrame();
+        assertTrue(System.nanoTime() - start >= 20000000L);
+    }
+}
@@ -0,0 +1,42 @@
+package augmented_reality.surfaces;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class LowPassFilterTest {
+
+    private static final float DELTA = 1.0e-5f;
+
+    @Test
+    public void firstSampleInitializesValue(){
+        final LowPassFilter filter = new LowPassFilter();
+
+        filter.filterWithTimeConstant(new float[]{1.0f, 2.0f, 3.0f}, 1000L, 100L);
+
+        assertArrayEquals(new float[]{1.0f, 2.0f, 3.0f}, filter.getValue(), DELTA);
+    }
+
+    @Test
+    public void decaysWithElapsedTime(){
+        final LowPassFilter filter = new LowPassFilter();
+
+        filter.filterWithTimeConstant(new float[]{0.0f, 0.0f, 0.0f}, 0L, 100L);
+        // One time constant later, the previous value keeps a weight of 1/e.
+        filter.filterWithTimeConstant(new float[]{1.0f, 1.0f, 1.0f}, 100000000L, 100L);
+
+        assertEquals(1.0f - (float) Math.exp(-1.0), filter.getValue()[0], DELTA);
+    }
+
+    @Test
+    public void ignoresSamplesWithoutElapsedTime(){
+        final LowPassFilter filter = new LowPassFilter();
+
+        filter.filterWithTimeConstant(new float[]{1.0f, 2.0f, 3.0f}, 1000L, 100L);
+        filter.filterWithTimeConstant(new float[]{10.0f, 20.0f, 30.0f}, 1000L, 100L);
+        filter.filterWithTimeConstant(new float[]{10.0f, 20.0f, 30.0f}, 500L, 100L);
+
+        assertArrayEquals(new float[]{1.0f, 2.0f, 3.0f}, filter.getValue(), DELTA);
+    }
+}
@@ -0,0 +1,185 @@
+package augmented_reality.surfaces;
+
+import android.graphics.Canvas;
+import android.graphics.RectF;
+import android.location.Location;
+import android.os.Bundle;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import augmented_reality.coordinate_transformation.ARTransform;
+import augmented_reality.coordinate_transformation.DirectionVector;
+import augmented_reality.coordinate_transformation.ScreenCoordinates;
+import augmented_reality.markers.Marker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelProjectorTest {
+
+    private static final float HALF_SIZE = 16.0f;
+
+    // Projects a fixed direction through the shared transform, as the direction markers do.
+    private static class DirectionMarker extends Marker {
+        private final ARTransform mTransform;
+        private final DirectionVector mDirection;
+        private final ScreenCoordinates mScreenCoordinates = new ScreenCoordinates();
+        int mProjections = 0;
+
+        DirectionMarker(final ARTransform transform, final float angle_from_north_towards_east, final float elevation_angle){
+            mTransform = transform;
+            mDirection = new DirectionVector(angle_from_north_towards_east, elevation_angle);
+        }
+
+        @Override
+        public boolean onProject(final RectF bounds){
+            mProjections++;
+
+            if (!mTransform.getScreenCoordinatesFromDirection(mDirection, mScreenCoordinates)) {
+                return false;
+            }
+
+            final float x = mScreenCoordinates.getX();
+            final float y = mScreenCoordinates.getY();
+            bounds.left = x - HALF_SIZE;
+            bounds.top = y - HALF_SIZE;
+            bounds.right = x + HALF_SIZE;
+            bounds.bottom = y + HALF_SIZE;
+
+            return mScreenCoordinates.getDepth() > 0.0f;
+        }
+
+        @Override
+        public void onDraw(final Canvas canvas){
+        }
+
+        @Override
+        public boolean touched(final float x, final float y){
+            return false;
+        }
+    }
+
+    private ParallelProjector mProjector;
+    private ARTransform mTransform;
+
+    @Before
+    public void setUp(){
+        // As many workers as create() uses at most, whatever the cores of the machine running the test.
+        mProjector = new ParallelProjector(3);
+
+        final Location location = new Location("test") {
+            @Override
+            public Bundle getExtras() {
+                return new Bundle();
+            }
+        };
+
+        // Rotated 30 degrees around the up axis and 20 degrees around the east axis.
+        final double a = Math.toRadians(30.0);
+        final double b = Math.toRadians(20.0);
+        final float[] rotation = {
+                (float) Math.cos(a), (float) -Math.sin(a), 0.0f,
+                (float) (Math.sin(a) * Math.cos(b)), (float) (Math.cos(a) * Math.cos(b)), (float) -Math.sin(b),
+                (float) (Math.sin(a) * Math.sin(b)), (float) (Math.cos(a) * Math.sin(b)), (float) Math.cos(b)
+        };
+
+        mTransform = new ARTransform(1080, 1920, 60.0f, 40.0f, 0);
+        mTransform.update(rotation, 0, location, 0.0f);
+    }
+
+    @After
+    public void tearDown(){
+        mProjector.release();
+    }
+
+    private DirectionMarker[] createMarkers(final int count){
+        final Random random = new Random(count);
+        final DirectionMarker[] markers = new DirectionMarker[count];
+
+        for (int i=0; i<count; i++) {
+            final float angle_from_north_towards_east = random.nextFloat() * 360.0f;
+            final float elevation_angle = (float) Math.toDegrees(Math.asin(2.0f * random.nextFloat() - 1.0f));
+            markers[i] = new DirectionMarker(mTransform, angle_from_north_towards_east, elevation_angle);
+        }
+
+        return markers;
+    }
+
+    // Same contract as ParallelProjector.project, on the calling thread only.
+    private static void projectSerially(
+            final Marker[] markers,
+            final int count,
+            final boolean[] projected,
+            final float[] bounds
+    ){
+        final RectF scratch = new RectF();
+
+        for (int i=0; i<count; i++) {
+            scratch.setEmpty();
+            projected[i] = markers[i].onProject(scratch);
+            if (projected[i]) {
+                bounds[4 * i] = scratch.left;
+                bounds[4 * i + 1] = scratch.top;
+                bounds[4 * i + 2] = scratch.right;
+                bounds[4 * i + 3] = scratch.bottom;
+            }
+        }
+    }
+
+    private void assertSameAsSerial(final int marker_count, final int count){
+        final DirectionMarker[] markers = createMarkers(marker_count);
+        final boolean[] serial_projected = new boolean[marker_count];
+        final float[] serial_bounds = new float[4 * marker_count];
+        final boolean[] parallel_projected = new boolean[marker_count];
+        final float[] parallel_bounds = new float[4 * marker_count];
+
+        projectSerially(markers, count, serial_projected, serial_bounds);
+        mProjector.project(markers, count, parallel_projected, parallel_bounds);
+
+        int on_screen = 0;
+        for (int i=0; i<marker_count; i++) {
+            // Projected once by each pass, markers past count never.
+            assertEquals(i < count ? 2 : 0, markers[i].mProjections);
+            assertEquals(serial_projected[i], parallel_projected[i]);
+            if (serial_projected[i]) {
+                on_screen++;
+                for (int j=0; j<4; j++) {
+                    assertEquals(serial_bounds[4 * i + j], parallel_bounds[4 * i + j], 0.0f);
+                }
+            }
+        }
+
+        if (count > 100) {
+            // The set is not trivially all on or all off screen.
+            assertTrue(on_screen > 0 && on_screen < count);
+        }
+    }
+
+    @Test
+    public void matchesSerialProjectionBelowThreshold(){
+        // Fewer markers than partitions, so some of the threads get nothing to do.
+        assertSameAsSerial(2, 2);
+        assertSameAsSerial(0, 0);
+    }
+
+    @Test
+    public void matchesSerialProjectionAboveThreshold(){
+        assertSameAsSerial(5000, 5000);
+    }
+
+    @Test
+    public void projectsOnlyTheFirstCountMarkers(){
+        assertSameAsSerial(1000, 777);
+    }
+
+    @Test
+    public void isReusableAcrossFrames(){
+        for (int frame=0; frame<20; frame++) {
+            assertSameAsSerial(500 + frame, 500 + frame);
+        }
+    }
+}
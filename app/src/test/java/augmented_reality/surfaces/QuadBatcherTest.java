@@ -0,0 +1,161 @@
+package augmented_reality.surfaces;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class QuadBatcherTest {
+
+    private static final float DELTA = 1.0e-6f;
+    private static final float[] IDENTITY = {1.0f, 0.0f, 0.0f, 1.0f, 0.0f, 0.0f};
+
+    // Records the batches, copying the vertices since they are only valid during the call.
+    private static class RecordingSink implements QuadBatcher.Sink {
+        final ArrayList<Object> mTextures = new ArrayList<>();
+        final ArrayList<float[]> mVertices = new ArrayList<>();
+        final ArrayList<Integer> mQuadCounts = new ArrayList<>();
+
+        @Override
+        public void drawQuads(final Object texture, final float[] vertices, final int quad_count){
+            mTextures.add(texture);
+            mVertices.add(Arrays.copyOf(
+                    vertices,
+                    quad_count * QuadBatcher.VERTICES_PER_QUAD * QuadBatcher.FLOATS_PER_VERTEX
+            ));
+            mQuadCounts.add(quad_count);
+        }
+    }
+
+    private RecordingSink mSink;
+
+    @Before
+    public void setUp(){
+        mSink = new RecordingSink();
+    }
+
+    @Test
+    public void writesVerticesClockwiseFromTopLeft(){
+        final QuadBatcher batcher = new QuadBatcher(mSink, 4);
+        final Object texture = new Object();
+
+        batcher.add(texture, 10.0f, 20.0f, 30.0f, 60.0f, 0.25f, 0.5f, 0.75f, 1.0f, 0.5f, IDENTITY, 0);
+        batcher.flush();
+
+        assertEquals(1, mSink.mVertices.size());
+        assertArrayEquals(
+                new float[]{
+                        10.0f, 20.0f, 0.25f, 0.5f, 0.5f,
+                        30.0f, 20.0f, 0.75f, 0.5f, 0.5f,
+                        30.0f, 60.0f, 0.75f, 1.0f, 0.5f,
+                        10.0f, 60.0f, 0.25f, 1.0f, 0.5f
+                },
+                mSink.mVertices.get(0),
+                DELTA
+        );
+    }
+
+    @Test
+    public void transformsPositionsByMatrixAtOffset(){
+        final QuadBatcher batcher = new QuadBatcher(mSink, 4);
+        // Padding, then a scale by 2 and 3 with a translation by 100, 200, and a 90 degree rotation.
+        final float[] matrices = {
+                -1.0f,
+                2.0f, 0.0f, 0.0f, 3.0f, 100.0f, 200.0f,
+                0.0f, 1.0f, -1.0f, 0.0f, 0.0f, 0.0f
+        };
+
+        batcher.add(this, 1.0f, 1.0f, 2.0f, 2.0f, 0.0f, 0.0f, 1.0f, 1.0f, 1.0f, matrices, 1);
+        batcher.add(this, 1.0f, 2.0f, 3.0f, 4.0f, 0.0f, 0.0f, 1.0f, 1.0f, 1.0f, matrices, 7);
+        batcher.flush();
+
+        final float[] vertices = mSink.mVertices.get(0);
+        final int stride = QuadBatcher.FLOATS_PER_VERTEX;
+        // Scaled and translated: top left (1, 1) and bottom right (2, 2).
+        assertEquals(102.0f, vertices[0], DELTA);
+        assertEquals(203.0f, vertices[1], DELTA);
+        assertEquals(104.0f, vertices[2 * stride], DELTA);
+        assertEquals(206.0f, vertices[2 * stride + 1], DELTA);
+        // Rotated, (x, y) maps to (-y, x): top left (1, 2) and top right (3, 2).
+        final int second = QuadBatcher.VERTICES_PER_QUAD * stride;
+        assertEquals(-2.0f, vertices[second], DELTA);
+        assertEquals(1.0f, vertices[second + 1], DELTA);
+        assertEquals(-2.0f, vertices[second + stride], DELTA);
+        assertEquals(3.0f, vertices[second + stride + 1], DELTA);
+    }
+
+    @Test
+    public void batchesConsecutiveQuadsOfSameTexture(){
+        final QuadBatcher batcher = new QuadBatcher(mSink, 16);
+        final Object first = new Object();
+        final Object second = new Object();
+
+        batcher.add(first, 0.0f, 0.0f, 1.0f, 1.0f, 0.0f, 0.0f, 1.0f, 1.0f, 1.0f, IDENTITY, 0);
+        batcher.add(first, 0.0f, 0.0f, 1.0f, 1.0f, 0.0f, 0.0f, 1.0f, 1.0f, 1.0f, IDENTITY, 0);
+        assertEquals(0, mSink.mTextures.size());
+
+        // A texture change flushes the quads of the previous one.
+        batcher.add(second, 0.0f, 0.0f, 1.0f, 1.0f, 0.0f, 0.0f, 1.0f, 1.0f, 1.0f, IDENTITY, 0);
+        assertEquals(1, mSink.mTextures.size());
+        assertSame(first, mSink.mTextures.get(0));
+        assertEquals(2, (int) mSink.mQuadCounts.get(0));
+
+        batcher.add(first, 0.0f, 0.0f, 1.0f, 1.0f, 0.0f, 0.0f, 1.0f, 1.0f, 1.0f, IDENTITY, 0);
+        batcher.flush();
+
+        assertEquals(3, mSink.mTextures.size());
+        assertSame(second, mSink.mTextures.get(1));
+        assertSame(first, mSink.mTextures.get(2));
+        assertEquals(3, batcher.takeBatchCount());
+        assertEquals(0, batcher.takeBatchCount());
+    }
+
+    @Test
+    public void flushesWhenFull(){
+        final QuadBatcher batcher = new QuadBatcher(mSink, 2);
+
+        for (int i=0; i<5; i++) {
+            batcher.add(this, 0.0f, 0.0f, 1.0f, 1.0f, 0.0f, 0.0f, 1.0f, 1.0f, 1.0f, IDENTITY, 0);
+        }
+        batcher.flush();
+
+        assertEquals(Arrays.asList(2, 2, 1), mSink.mQuadCounts);
+    }
+
+    @Test
+    public void flushWithoutQuadsDrawsNothing(){
+        final QuadBatcher batcher = new QuadBatcher(mSink, 2);
+
+        batcher.flush();
+
+        assertEquals(0, mSink.mTextures.size());
+        assertEquals(0, batcher.takeBatchCount());
+    }
+
+    @Test
+    public void clampsMaxQuadsToIndexRange(){
+        assertEquals(QuadBatcher.MAX_QUADS, new QuadBatcher(mSink, Integer.MAX_VALUE).getMaxQuads());
+        assertEquals(1, new QuadBatcher(mSink, 0).getMaxQuads());
+    }
+
+    @Test
+    public void createsTwoTrianglesPerQuad(){
+        final short[] indices = QuadBatcher.createIndices(2);
+
+        assertArrayEquals(new short[]{0, 1, 2, 0, 2, 3, 4, 5, 6, 4, 6, 7}, indices);
+    }
+
+    @Test
+    public void indicesCoverFullUnsignedShortRange(){
+        final short[] indices = QuadBatcher.createIndices(QuadBatcher.MAX_QUADS);
+
+        assertEquals(QuadBatcher.MAX_QUADS * QuadBatcher.INDICES_PER_QUAD, indices.length);
+        // The last vertex is 65535, stored as a negative short and read back as unsigned by GL.
+        assertEquals(65535, indices[indices.length - 1] & 0xFFFF);
+    }
+}
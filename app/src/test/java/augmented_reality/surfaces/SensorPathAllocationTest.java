@@ -0,0 +1,100 @@
+package augmented_reality.surfaces;
+
+import android.hardware.Sensor;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import augmented_reality.kernel.AugmentedRealityKernelInterface;
+
+import static org.junit.Assert.assertEquals;
+
+// The sensor thread filters and publishes every sensor event, so the path must not allocate: with hundreds of events
+// per second, any garbage ends up in collector pauses on the render thread.
+public class SensorPathAllocationTest {
+
+    private static final int EVENTS = 100000;
+
+    private com.sun.management.ThreadMXBean mThreadBean;
+    private AccelerometerMagnetometerEngine mEngine;
+    private final float[] mValues = new float[3];
+    private final float[] mRotation = new float[9];
+
+    @Before
+    public void setUp(){
+        final java.lang.management.ThreadMXBean thread_bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(thread_bean instanceof com.sun.management.ThreadMXBean);
+        mThreadBean = (com.sun.management.ThreadMXBean) thread_bean;
+        Assume.assumeTrue(mThreadBean.isThreadAllocatedMemorySupported());
+        mThreadBean.setThreadAllocatedMemoryEnabled(true);
+
+        mEngine = new AccelerometerMagnetometerEngine(
+                null,
+                new ARMarkersSurface.SharedVector(9),
+                new ARMarkersSurface.SharedVector(3),
+                new AtomicInteger(),
+                0.8f,
+                0.8f
+        );
+        mEngine.setGravityFilterTimeConstant(100000000L);
+        mEngine.setMagneticFilterTimeConstant(100000000L);
+    }
+
+    private long getAllocatedBytes(){
+        return mThreadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    // Bytes allocated by the measuring itself, to subtract from the measures.
+    private long getMeasureOverhead(){
+        final long start = getAllocatedBytes();
+        return getAllocatedBytes() - start;
+    }
+
+    // SensorManager.getRotationMatrix is not available off the device, so the rotation is also published directly.
+    private void sendEvents(){
+        for (int i=0; i<EVENTS; i++) {
+            final long timestamp = (i + 1) * 5000000L;
+
+            mValues[0] = (float) Math.sin(i);
+            mValues[1] = (float) Math.cos(i);
+            mValues[2] = 9.81f;
+            mEngine.onSensorChanged(Sensor.TYPE_ACCELEROMETER, mValues, timestamp);
+
+            mValues[2] = -40.0f;
+            mEngine.onSensorChanged(Sensor.TYPE_MAGNETIC_FIELD, mValues, timestamp);
+
+            mRotation[0] = mRotation[4] = mRotation[8] = (float) Math.cos(i * 0.001);
+            mRotation[1] = (float) Math.sin(i * 0.001);
+            mRotation[3] = -mRotation[1];
+            mEngine.publishRotation(mRotation, timestamp);
+        }
+    }
+
+    private long measureEvents(){
+        // Warm up, so class loading and compilation are not measured.
+        sendEvents();
+
+        final long overhead = getMeasureOverhead();
+        final long start = getAllocatedBytes();
+        sendEvents();
+        return getAllocatedBytes() - start - overhead;
+    }
+
+    @Test
+    public void coefficientFilteringDoesNotAllocate(){
+        mEngine.setFilterMode(AugmentedRealityKernelInterface.FILTER_MODE_COEFFICIENT);
+
+        assertEquals(0L, measureEvents());
+    }
+
+    @Test
+    public void timeConstantFilteringDoesNotAllocate(){
+        mEngine.setFilterMode(AugmentedRealityKernelInterface.FILTER_MODE_TIME_CONSTANT);
+
+        assertEquals(0L, measureEvents());
+    }
+}
@@ -0,0 +1,40 @@
+package augmented_reality.surfaces;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TimerFrameSourceTest {
+
+    private static final long PERIOD = 5000000L;
+
+    @Test
+    public void ticksAtFixedPeriod() throws InterruptedException {
+        final TimerFrameSource source = new TimerFrameSource(PERIOD);
+
+        final long start = System.nanoTime();
+        long previous = source.awaitFrame();
+        for (int i=0; i<10; i++) {
+            final long frame_time = source.awaitFrame();
+            assertEquals(0L, (frame_time - previous) % PERIOD);
+            assertTrue(frame_time > previous);
+            previous = frame_time;
+        }
+
+        assertTrue(System.nanoTime() - start >= 10 * PERIOD);
+    }
+
+    @Test
+    public void dropsMissedFrames() throws InterruptedException {
+        final TimerFrameSource source = new TimerFrameSource(PERIOD);
+
+        final long first = source.awaitFrame();
+        Thread.sleep(4 * PERIOD / 1000000L);
+        final long next = source.awaitFrame();
+
+        // Late frames are not delivered in a burst: the next one is on the period grid, not in the past.
+        assertEquals(0L, (next - first) % PERIOD);
+        assertTrue(next >= System.nanoTime() - PERIOD);
+    }
+}